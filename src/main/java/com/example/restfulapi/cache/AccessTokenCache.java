@@ -0,0 +1,67 @@
+package com.example.restfulapi.cache;
+
+import com.example.restfulapi.config.TokenSessionConfig;
+import com.example.restfulapi.dto.CacheStatsDto;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 有効なAccessTokenを保持するread-throughキャッシュクラス
+ *
+ * <p>API呼び出しのたびに参照されるため、読み込みはロックを取らずに行う。件数の上限は設けない
+ *
+ * <p>無効化は自ノードのエントリにしか及ばないため、各エントリは格納からTokenSessionConfig.cacheMaxAgeMillisを過ぎるとDBで再確認する。この期限は使用されても延長せず、boarderLineより長くもしないため、他ノードで失効、あるいは期限切れとなったトークンも一定時間内に拒否される
+ *
+ * @author Natsume Takuya
+ */
+@Component
+public class AccessTokenCache {
+
+  private final ReadThroughCache<String, Boolean> cache;
+
+  public AccessTokenCache(TokenSessionConfig tokenSessionConfig) {
+    this.cache =
+        new ReadThroughCache<>(
+            () ->
+                Math.min(
+                    TimeUnit.MILLISECONDS.toNanos(tokenSessionConfig.getCacheMaxAgeMillis()),
+                    TimeUnit.MINUTES.toNanos(tokenSessionConfig.getBoarderLine())),
+            () -> Integer.MAX_VALUE);
+  }
+
+  /**
+   * トークンが有効か判定し、キャッシュに存在しなければloaderで確認して格納する
+   *
+   * @param token 判定対象のトークン
+   * @param loader キャッシュに存在しない場合の確認処理
+   * @return boolean 有効なトークンであればtrue
+   */
+  public boolean isValid(String token, Predicate<String> loader) {
+    return cache.get(token, key -> loader.test(key) ? Boolean.TRUE : null) != null;
+  }
+
+  /**
+   * 該当トークンのエントリを無効化する
+   *
+   * @param token 無効化対象のトークン
+   */
+  public void invalidate(String token) {
+    cache.invalidate(token);
+  }
+
+  /** 期限切れのエントリをまとめて取り除く */
+  public void purgeExpired() {
+    cache.purgeExpired();
+  }
+
+  /**
+   * キャッシュの統計情報を取得する
+   *
+   * @return CacheStatsDto ヒット数、ミス数、追い出し数、件数
+   */
+  public CacheStatsDto getStats() {
+    return cache.getStats();
+  }
+}
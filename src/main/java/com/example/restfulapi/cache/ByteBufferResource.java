@@ -0,0 +1,76 @@
+package com.example.restfulapi.cache;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferの内容をResourceとして扱うクラス
+ *
+ * <p>呼び出しごとに独立した読み込み位置を持つよう、ByteBufferは複製して読み込む
+ *
+ * @author Natsume Takuya
+ */
+public class ByteBufferResource extends AbstractResource {
+
+  private final ByteBuffer buffer;
+  private final String description;
+
+  public ByteBufferResource(ByteBuffer buffer, String description) {
+    this.buffer = buffer.asReadOnlyBuffer();
+    this.description = description;
+  }
+
+  @Override
+  public String getDescription() {
+    return "ByteBuffer resource [" + description + "]";
+  }
+
+  @Override
+  public long contentLength() {
+    return buffer.remaining();
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return new ByteBufferInputStream(buffer.duplicate());
+  }
+
+  /** ByteBufferから読み込むInputStreamクラス */
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int readLength = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, readLength);
+      return readLength;
+    }
+
+    @Override
+    public long skip(long length) {
+      int skipLength = (int) Math.max(0, Math.min(length, buffer.remaining()));
+      buffer.position(buffer.position() + skipLength);
+      return skipLength;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.example.restfulapi.cache;
+
+import com.example.restfulapi.config.ImageCacheConfig;
+import com.example.restfulapi.dto.CacheStatsDto;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * アクセス頻度の高い画像を保持する、合計バイト数で上限を持つLRUキャッシュクラス
+ *
+ * <p>画像はdirect ByteBufferとしてヒープ外に保持するため、キャッシュの容量がGCの対象とならない。1回しか参照されない画像でキャッシュが入れ替わらないよう、直近に一度参照されたキーのみを記録しておき、2回目の参照で初めて格納する。それまでは呼び出し元がファイルをゼロコピーで返す
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@RequiredArgsConstructor
+public class ImageCache {
+
+  private final ImageCacheConfig imageCacheConfig;
+
+  private final Map<String, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private long totalBytes;
+
+  /** 一度だけ参照された画像のキー。格納の可否の判定に用いるため、件数の上限を超えた分は古い順に忘れる */
+  private final Map<String, Boolean> seenOnce = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** evictとevictByPrefixのたびに増やす値。ファイルの読み込み前後で比べ、読み込み中に削除された画像を格納しない */
+  private long generation;
+
+  /**
+   * キャッシュから画像を取得し、存在しなければファイルから読み込んで格納する
+   *
+   * @param key 画像のキー
+   * @param file 画像ファイルのpath
+   * @return Optional<ByteBuffer> 画像の内容。初回の参照、あるいは1件あたりの上限を超える画像の場合はempty
+   * @throws IOException ファイル読み込み時の例外を投げるIOExceptionクラス
+   */
+  public Optional<ByteBuffer> get(String key, Path file) throws IOException {
+    long loadedGeneration;
+    synchronized (this) {
+      ByteBuffer buffer = entries.get(key);
+      if (buffer != null) {
+        hits.incrementAndGet();
+        return Optional.of(buffer);
+      }
+      misses.incrementAndGet();
+      if (seenOnce.remove(key) == null) {
+        seenOnce.put(key, Boolean.TRUE);
+        Iterator<String> iterator = seenOnce.keySet().iterator();
+        while (seenOnce.size() > imageCacheConfig.getMaxSeenKeys() && iterator.hasNext()) {
+          iterator.next();
+          iterator.remove();
+        }
+        return Optional.empty();
+      }
+      loadedGeneration = generation;
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > imageCacheConfig.getMaxEntryBytes()) {
+        return Optional.empty();
+      }
+
+      // FileChannelからdirect bufferへ直接読み込み、ヒープ上の配列を経由しない
+      ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        // 全て読み込むまで繰り返す
+      }
+      buffer.flip();
+      put(key, buffer, loadedGeneration);
+      return Optional.of(buffer);
+    }
+  }
+
+  /**
+   * 画像をキャッシュから取り除く
+   *
+   * @param key 取り除く画像のキー
+   */
+  public synchronized void evict(String key) {
+    generation++;
+    seenOnce.remove(key);
+    ByteBuffer buffer = entries.remove(key);
+    if (buffer != null) {
+      totalBytes -= buffer.capacity();
+    }
+  }
+
+  /**
+   * キーが指定の接頭辞で始まる画像をキャッシュから取り除く
+   *
+   * @param keyPrefix 取り除く画像のキーの接頭辞
+   */
+  public synchronized void evictByPrefix(String keyPrefix) {
+    generation++;
+    seenOnce.keySet().removeIf(key -> key.startsWith(keyPrefix));
+    Iterator<Map.Entry<String, ByteBuffer>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, ByteBuffer> entry = iterator.next();
+      if (entry.getKey().startsWith(keyPrefix)) {
+        totalBytes -= entry.getValue().capacity();
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * キャッシュの統計情報を取得する
+   *
+   * @return CacheStatsDto ヒット数、ミス数、追い出し数、件数
+   */
+  public CacheStatsDto getStats() {
+    int size;
+    synchronized (this) {
+      size = entries.size();
+    }
+    return CacheStatsDto.builder()
+        .hits(hits.get())
+        .misses(misses.get())
+        .evictions(evictions.get())
+        .size(size)
+        .build();
+  }
+
+  /**
+   * 読み込み開始後に追い出しが行われていなければ画像を格納し、合計バイト数の上限を超えた分を古い順に追い出す
+   *
+   * @param key 画像のキー
+   * @param buffer 画像の内容
+   * @param loadedGeneration 読み込み開始時点の世代番号
+   */
+  private synchronized void put(String key, ByteBuffer buffer, long loadedGeneration) {
+    if (generation != loadedGeneration) {
+      return;
+    }
+    ByteBuffer previous = entries.put(key, buffer);
+    if (previous != null) {
+      totalBytes -= previous.capacity();
+    }
+    totalBytes += buffer.capacity();
+
+    Iterator<ByteBuffer> iterator = entries.values().iterator();
+    while (totalBytes > imageCacheConfig.getMaxBytes() && iterator.hasNext()) {
+      totalBytes -= iterator.next().capacity();
+      iterator.remove();
+      evictions.incrementAndGet();
+    }
+  }
+}
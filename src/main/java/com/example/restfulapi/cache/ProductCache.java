@@ -0,0 +1,57 @@
+package com.example.restfulapi.cache;
+
+import com.example.restfulapi.config.ProductCacheConfig;
+import com.example.restfulapi.dto.CacheStatsDto;
+import com.example.restfulapi.dto.ProductDto;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * idをキーとしてProductDtoを保持する、ProductCacheConfigの件数とTTLで上限を持つread-throughキャッシュクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+public class ProductCache {
+
+  private final ReadThroughCache<BigInteger, ProductDto> cache;
+
+  public ProductCache(ProductCacheConfig productCacheConfig) {
+    this.cache =
+        new ReadThroughCache<>(
+            () -> TimeUnit.SECONDS.toNanos(productCacheConfig.getTtlSeconds()),
+            productCacheConfig::getMaxSize);
+  }
+
+  /**
+   * キャッシュからProductDtoを取得し、存在しなければloaderで読み込んで格納する
+   *
+   * @param id 取得対象Productのid
+   * @param loader キャッシュに存在しない場合の読み込み処理
+   * @return ProductDto 該当ProductのDTOクラス
+   */
+  public ProductDto get(BigInteger id, Function<BigInteger, ProductDto> loader) {
+    return cache.get(id, loader);
+  }
+
+  /**
+   * 該当idのエントリを無効化する
+   *
+   * @param id 無効化対象Productのid
+   */
+  public void invalidate(BigInteger id) {
+    cache.invalidate(id);
+  }
+
+  /**
+   * キャッシュの統計情報を取得する
+   *
+   * @return CacheStatsDto ヒット数、ミス数、追い出し数、件数
+   */
+  public CacheStatsDto getStats() {
+    return cache.getStats();
+  }
+}
@@ -0,0 +1,193 @@
+package com.example.restfulapi.cache;
+
+import com.example.restfulapi.dto.CacheStatsDto;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 件数とTTLで上限を持つread-throughキャッシュクラス。AccessTokenCache、UserInfoCache、ProductCacheが共通で用いる
+ *
+ * <p>ヒット時はロックを取らず、エントリの最終参照時刻を更新するのみとする。件数が上限を超えた場合は、最終参照時刻の古いエントリから上限の一割分をまとめて追い出す
+ *
+ * <p>無効化のたびに世代番号を増やし、読み込み開始時点から世代番号が変わっていれば読み込んだ値を格納しない。これにより、読み込み中に無効化された古い値がキャッシュに残らない
+ *
+ * @param <K> キーの型
+ * @param <V> 値の型
+ * @author Natsume Takuya
+ */
+public class ReadThroughCache<K, V> {
+
+  private final LongSupplier ttlNanos;
+  private final IntSupplier maxSize;
+
+  private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /** 追い出しを同時に1スレッドのみで行うためのフラグ */
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  private final AtomicLong generation = new AtomicLong();
+
+  /**
+   * 設定値を参照するたびに読み直すため、TTLと件数の上限は値ではなく取得処理で受け取る
+   *
+   * @param ttlNanos エントリを格納してから期限切れとするまでの時間(ナノ秒)
+   * @param maxSize 保持する件数の上限
+   */
+  public ReadThroughCache(LongSupplier ttlNanos, IntSupplier maxSize) {
+    this.ttlNanos = ttlNanos;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * キャッシュから値を取得し、存在しなければloaderで読み込んで格納する
+   *
+   * @param key 取得対象のキー
+   * @param loader キャッシュに存在しない場合の読み込み処理。nullを返した場合は格納しない
+   * @return V 該当キーの値
+   */
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    Entry<V> entry = entries.get(key);
+    if (entry != null) {
+      long now = System.nanoTime();
+      if (entry.getExpiresAt() - now > 0) {
+        entry.lastAccess = now;
+        hits.incrementAndGet();
+        return entry.getValue();
+      }
+      if (entries.remove(key, entry)) {
+        evictions.incrementAndGet();
+      }
+    }
+
+    misses.incrementAndGet();
+    long loadedGeneration = generation.get();
+    V value = loader.apply(key);
+    if (value != null) {
+      put(key, value, loadedGeneration);
+    }
+    return value;
+  }
+
+  /**
+   * 該当キーのエントリを無効化する
+   *
+   * @param key 無効化対象のキー
+   */
+  public void invalidate(K key) {
+    generation.incrementAndGet();
+    entries.remove(key);
+  }
+
+  /** 期限切れのエントリをまとめて取り除く */
+  public void purgeExpired() {
+    long now = System.nanoTime();
+    entries
+        .entrySet()
+        .removeIf(
+            entry -> {
+              boolean expired = entry.getValue().getExpiresAt() - now <= 0;
+              if (expired) {
+                evictions.incrementAndGet();
+              }
+              return expired;
+            });
+  }
+
+  /**
+   * キャッシュの統計情報を取得する
+   *
+   * @return CacheStatsDto ヒット数、ミス数、追い出し数、件数
+   */
+  public CacheStatsDto getStats() {
+    return CacheStatsDto.builder()
+        .hits(hits.get())
+        .misses(misses.get())
+        .evictions(evictions.get())
+        .size(entries.size())
+        .build();
+  }
+
+  /**
+   * 読み込み開始後に無効化が行われていなければエントリを格納し、上限を超えた場合は追い出す
+   *
+   * @param key キー
+   * @param value 格納する値
+   * @param loadedGeneration 読み込み開始時点の世代番号
+   */
+  private void put(K key, V value, long loadedGeneration) {
+    if (generation.get() != loadedGeneration) {
+      return;
+    }
+    long now = System.nanoTime();
+    Entry<V> entry = new Entry<>(value, now + ttlNanos.getAsLong(), now);
+    entries.put(key, entry);
+    // 格納までの間に無効化が行われていた場合は取り消す
+    if (generation.get() != loadedGeneration) {
+      entries.remove(key, entry);
+      return;
+    }
+
+    if (entries.size() > maxSize.getAsInt()) {
+      evictLeastRecentlyUsed();
+    }
+  }
+
+  /** 最終参照時刻の古いエントリから、件数が上限の9割になるまで追い出す */
+  private void evictLeastRecentlyUsed() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      int limit = maxSize.getAsInt();
+      int excess = entries.size() - (limit - limit / 10);
+      if (excess <= 0) {
+        return;
+      }
+      List<Map.Entry<K, Entry<V>>> candidates = new ArrayList<>(entries.entrySet());
+      long now = System.nanoTime();
+      // 最終参照時刻はnanoTime基準のため、現在時刻からの経過時間が長い順に並べる
+      candidates.sort(
+          Comparator.comparingLong(
+                  (Map.Entry<K, Entry<V>> candidate) -> now - candidate.getValue().lastAccess)
+              .reversed());
+      for (int i = 0; i < excess && i < candidates.size(); i++) {
+        Map.Entry<K, Entry<V>> candidate = candidates.get(i);
+        if (entries.remove(candidate.getKey(), candidate.getValue())) {
+          evictions.incrementAndGet();
+        }
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  @Getter
+  private static class Entry<V> {
+
+    private final V value;
+
+    private final long expiresAt;
+
+    /** 最終参照時刻。ヒットのたびにロックを取らず上書きするため、追い出し順は近似となる */
+    private volatile long lastAccess;
+
+    private Entry(V value, long expiresAt, long lastAccess) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.lastAccess = lastAccess;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.example.restfulapi.cache;
+
+import com.example.restfulapi.config.GithubConfig;
+import com.example.restfulapi.dto.CacheStatsDto;
+import com.example.restfulapi.dto.UserInfoDto;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * OAuthTokenをキーとしてGithubのユーザー情報を保持する、件数とTTLで上限を持つread-throughキャッシュクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+public class UserInfoCache {
+
+  private final ReadThroughCache<String, UserInfoDto> cache;
+
+  public UserInfoCache(GithubConfig githubConfig) {
+    this.cache =
+        new ReadThroughCache<>(
+            () -> TimeUnit.SECONDS.toNanos(githubConfig.getUserInfoTtlSeconds()),
+            githubConfig::getUserInfoMaxSize);
+  }
+
+  /**
+   * キャッシュからユーザー情報を取得し、存在しなければloaderで読み込んで格納する
+   *
+   * @param oauthToken ユーザーのOAuthToken
+   * @param loader キャッシュに存在しない場合の読み込み処理
+   * @return UserInfoDto ユーザー情報のDTOクラス
+   */
+  public UserInfoDto get(String oauthToken, Function<String, UserInfoDto> loader) {
+    return cache.get(oauthToken, loader);
+  }
+
+  /**
+   * 該当OAuthTokenのエントリを無効化する
+   *
+   * @param oauthToken 無効化対象のOAuthToken
+   */
+  public void invalidate(String oauthToken) {
+    cache.invalidate(oauthToken);
+  }
+
+  /**
+   * キャッシュの統計情報を取得する
+   *
+   * @return CacheStatsDto ヒット数、ミス数、追い出し数、件数
+   */
+  public CacheStatsDto getStats() {
+    return cache.getStats();
+  }
+}
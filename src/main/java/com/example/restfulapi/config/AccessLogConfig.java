@@ -0,0 +1,74 @@
+package com.example.restfulapi.config;
+
+import com.example.restfulapi.constant.AccessLogPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * APIのアクセスログの出力先とバッファを管理するConfigurationクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConfigurationProperties(prefix = "accesslog")
+@Data
+public class AccessLogConfig {
+
+  private static final Pattern FILE_NAME_PATTERN =
+      Pattern.compile("ApiLog\\.([0-9]{4}-[0-9]{2}-[0-9]{2})\\.tsv");
+
+  /** ログファイルを出力するディレクトリ */
+  private String directory = "./src/main/resources/Log";
+
+  /** ログファイルを保持する日数 */
+  private int maxHistory = 30;
+
+  /** バッファに保持できる記録の件数。2の累乗に切り上げる */
+  private int capacity = 8192;
+
+  /** バッファが満杯の場合の動作 */
+  private AccessLogPolicy policy = AccessLogPolicy.DROP;
+
+  /** 書き込み用のバイトバッファの大きさ */
+  private int bufferBytes = 64 * 1024;
+
+  /** バッファが空の場合に書き込みスレッドが待機する時間 */
+  private long idleMillis = 10;
+
+  /**
+   * 指定した日付のログファイルのpathを取得する
+   *
+   * @param date ログの日付
+   * @return Path ログファイルまでのpath
+   */
+  public Path getFile(LocalDate date) {
+    return Paths.get(directory, "ApiLog." + date + ".tsv");
+  }
+
+  /**
+   * ログファイルのpathから日付を取得する
+   *
+   * @param file ディレクトリ内のファイル
+   * @return Optional<LocalDate> ログの日付。ログファイルでない場合はempty
+   */
+  public Optional<LocalDate> getFileDate(Path file) {
+    Matcher matcher = FILE_NAME_PATTERN.matcher(file.getFileName().toString());
+    if (!matcher.matches()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(LocalDate.parse(matcher.group(1)));
+    } catch (DateTimeParseException ex) {
+      return Optional.empty();
+    }
+  }
+}
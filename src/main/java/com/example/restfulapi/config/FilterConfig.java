@@ -1,18 +1,19 @@
 package com.example.restfulapi.config;
 
-import com.example.restfulapi.filter.TokenFilter;
+import com.example.restfulapi.filter.AuthenticationFilter;
+import com.example.restfulapi.filter.RateLimitFilter;
 import com.example.restfulapi.logger.BatchLogger;
-import com.example.restfulapi.repository.AccessTokenRepository;
 import com.example.restfulapi.service.OauthService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-
-import javax.servlet.http.HttpServletRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
 
 /**
- * TokenFilterクラスのConfigurationクラス
+ * API用のFilterクラスのConfigurationクラス
  *
  * @author Natsume Takuya
  */
@@ -20,21 +21,74 @@ import javax.servlet.http.HttpServletRequest;
 @RequiredArgsConstructor
 public class FilterConfig {
 
-  private final HttpServletRequest httpServletRequest;
-  private final AccessTokenRepository accessTokenRepository;
   private final OauthService oauthService;
+  private final MessageSource messageSource;
+  private final ObjectMapper objectMapper;
+  private final RateLimitConfig rateLimitConfig;
+  private final BatchLogger batchLogger;
+
+  /**
+   * RateLimitFilterを生成するメソッド。統計情報の参照、定期的な破棄処理のためBeanとする
+   *
+   * @return RateLimitFilter RateLimitFilterクラス
+   */
+  @Bean
+  public RateLimitFilter rateLimitFilter() {
+    return new RateLimitFilter(rateLimitConfig, messageSource, objectMapper);
+  }
+
+  /**
+   * RateLimitFilterの設定を行うメソッド。IPアドレスごとの上限を全てのリクエストで判定するため全てのURLに適用し、認証より前に実行する
+   *
+   * @return FilterRegistrationBean FilterRegistrationBeanクラス
+   */
+  @Bean
+  public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration() {
+    FilterRegistrationBean<RateLimitFilter> registrationBean = new FilterRegistrationBean<>();
+    registrationBean.setFilter(rateLimitFilter());
+    registrationBean.addUrlPatterns("/*");
+    registrationBean.setOrder(2);
+
+    return registrationBean;
+  }
+
+  /**
+   * AuthenticationFilterを生成するメソッド。統計情報の参照のためBeanとする
+   *
+   * @return AuthenticationFilter AuthenticationFilterクラス
+   */
+  @Bean
+  public AuthenticationFilter authenticationFilter() {
+    return new AuthenticationFilter(oauthService, messageSource, objectMapper);
+  }
+
+  /**
+   * AuthenticationFilterの設定を行うメソッド。拒否したリクエストもログに残すため、BatchLoggerの内側で実行する
+   *
+   * @return FilterRegistrationBean FilterRegistrationBeanクラス
+   */
+  @Bean
+  public FilterRegistrationBean<AuthenticationFilter> authenticationFilterRegistration() {
+    FilterRegistrationBean<AuthenticationFilter> registrationBean = new FilterRegistrationBean<>();
+    registrationBean.setFilter(authenticationFilter());
+    registrationBean.addUrlPatterns("/api/*");
+    registrationBean.setOrder(3);
+
+    return registrationBean;
+  }
 
   /**
-   * TokenFilterの設定を行うメソッド
+   * クライアントごとのリクエスト数制限の設定を行うメソッド。認証済みのクライアントをキーとするため、認証の後に実行する
    *
    * @return FilterRegistrationBean FilterRegistrationBeanクラス
    */
   @Bean
-  public FilterRegistrationBean<TokenFilter> tokenFilter() {
-    FilterRegistrationBean<TokenFilter> registrationBean = new FilterRegistrationBean<>();
-    registrationBean.setFilter(
-        new TokenFilter(httpServletRequest, accessTokenRepository, oauthService));
+  public FilterRegistrationBean<OncePerRequestFilter> clientRateLimitFilterRegistration() {
+    FilterRegistrationBean<OncePerRequestFilter> registrationBean = new FilterRegistrationBean<>();
+    registrationBean.setFilter(rateLimitFilter().getClientFilter());
+    registrationBean.setName("clientRateLimitFilter");
     registrationBean.addUrlPatterns("/api/*");
+    registrationBean.setOrder(4);
 
     return registrationBean;
   }
@@ -42,8 +96,9 @@ public class FilterConfig {
   @Bean
   public FilterRegistrationBean<BatchLogger> batchLogger() {
     FilterRegistrationBean<BatchLogger> registrationBean = new FilterRegistrationBean<>();
-    registrationBean.setFilter(new BatchLogger());
+    registrationBean.setFilter(batchLogger);
     registrationBean.addUrlPatterns("/api/*");
+    registrationBean.setOrder(1);
 
     return registrationBean;
   }
@@ -0,0 +1,65 @@
+package com.example.restfulapi.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.social.oauth2.OAuth2Operations;
+import org.springframework.social.oauth2.OAuth2Template;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Githubとの通信に用いるクライアントを生成するConfigurationクラス
+ *
+ * <p>クライアントはアプリケーション全体で共有し、リクエストごとに生成しない。接続はJDKのHttpURLConnectionのkeep-aliveにより再利用される
+ *
+ * @author Natsume Takuya
+ */
+@Configuration
+@RequiredArgsConstructor
+public class GithubClientConfig {
+
+  private final GithubConfig githubConfig;
+
+  /**
+   * タイムアウトを設定したHTTPクライアントを生成するメソッド
+   *
+   * @return ClientHttpRequestFactory Github用のHTTPクライアント
+   */
+  @Bean
+  public ClientHttpRequestFactory githubRequestFactory() {
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(githubConfig.getConnectTimeoutMillis());
+    requestFactory.setReadTimeout(githubConfig.getReadTimeoutMillis());
+    return requestFactory;
+  }
+
+  /**
+   * Github OAuthの認可、OAuthToken取得を行うクライアントを生成するメソッド
+   *
+   * @return OAuth2Operations OAuth2の処理を行うインターフェース
+   */
+  @Bean
+  public OAuth2Operations githubOAuth2Operations() {
+    OAuth2Template oauth2Template =
+        new OAuth2Template(
+            githubConfig.getClientId(),
+            githubConfig.getClientSecret(),
+            githubConfig.getAuthorizeUrl(),
+            githubConfig.getAccessTokenUrl());
+    oauth2Template.setUseParametersForClientAuthentication(true);
+    oauth2Template.setRequestFactory(githubRequestFactory());
+    return oauth2Template;
+  }
+
+  /**
+   * GithubのAPIを呼び出すクライアントを生成するメソッド
+   *
+   * @return RestTemplate Github API用のRestTemplate
+   */
+  @Bean
+  public RestTemplate githubRestTemplate() {
+    return new RestTemplate(githubRequestFactory());
+  }
+}
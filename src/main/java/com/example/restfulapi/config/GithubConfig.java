@@ -19,4 +19,25 @@ public class GithubConfig {
   private String clientSecret;
 
   private String callbackUrl;
+
+  /** 認可画面のURL。テスト時はスタブサーバーのURLに置き換える */
+  private String authorizeUrl = "https://github.com/login/oauth/authorize";
+
+  /** OAuthTokenを取得するURL */
+  private String accessTokenUrl = "https://github.com/login/oauth/access_token";
+
+  /** ユーザー情報を取得するAPIのURL */
+  private String apiUrl = "https://api.github.com";
+
+  /** Githubへの接続タイムアウト */
+  private int connectTimeoutMillis = 3000;
+
+  /** Githubからの読み込みタイムアウト */
+  private int readTimeoutMillis = 5000;
+
+  /** ユーザー情報をキャッシュする秒数 */
+  private long userInfoTtlSeconds = 300;
+
+  /** キャッシュするユーザー情報の件数の上限 */
+  private int userInfoMaxSize = 1000;
 }
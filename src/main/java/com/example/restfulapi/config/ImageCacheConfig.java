@@ -0,0 +1,25 @@
+package com.example.restfulapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 画像キャッシュの容量を管理するConfigurationクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConfigurationProperties(prefix = "cache.image")
+@Data
+public class ImageCacheConfig {
+
+  /** キャッシュ全体で保持する画像の合計バイト数の上限 */
+  private long maxBytes = 64L * 1024 * 1024;
+
+  /** キャッシュ対象とする画像1件あたりのバイト数の上限 */
+  private long maxEntryBytes = 1024L * 1024;
+
+  /** 格納の可否を判定するため、一度だけ参照された画像のキーを記録しておく件数の上限 */
+  private int maxSeenKeys = 10000;
+}
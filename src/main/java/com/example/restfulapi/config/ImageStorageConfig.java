@@ -0,0 +1,31 @@
+package com.example.restfulapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 画像実体の保存方式を管理するConfigurationクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConfigurationProperties(prefix = "storage.image")
+@Data
+public class ImageStorageConfig {
+
+  /** 保存方式。filesystemは1画像1ファイル、segmentは大きなセグメントファイルへの追記 */
+  private String type = "filesystem";
+
+  /** アップロードできる画像1件あたりのバイト数の上限 */
+  private long uploadMaxBytes = 100L * 1024;
+
+  /** セグメントファイル1つあたりのバイト数の上限 */
+  private long segmentMaxBytes = 256L * 1024 * 1024;
+
+  /** 有効なデータの割合がこの値を下回ったセグメントをコンパクションの対象とする */
+  private double compactionThreshold = 0.5;
+
+  /** コンパクションの実行間隔(ミリ秒) */
+  private long compactionIntervalMillis = 600000;
+}
@@ -0,0 +1,37 @@
+package com.example.restfulapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 縮小画像の生成を管理するConfigurationクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConfigurationProperties(prefix = "image.variant")
+@Data
+public class ImageVariantConfig {
+
+  /** 生成する縮小画像の幅(px) */
+  private List<Integer> widths = Arrays.asList(64, 256, 1024);
+
+  /** 縮小画像を生成するワーカースレッド数 */
+  private int workerThreads = 2;
+
+  /** ワーカーに渡して待機させるジョブ数の上限 */
+  private int queueCapacity = 100;
+
+  /** 失敗したジョブを再試行する回数の上限 */
+  private int maxAttempts = 3;
+
+  /** 縮小画像を生成する元画像の画素数の上限。デコード後の画像は1画素あたり4バイト程度のヒープを使う */
+  private long maxPixels = 4096L * 4096;
+
+  /** 処理中のジョブが完了しなかったとみなし、再実行するまでの時間(ミリ秒) */
+  private long leaseTimeoutMillis = 600000;
+}
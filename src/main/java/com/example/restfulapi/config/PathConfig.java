@@ -4,6 +4,9 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * Configurationクラス
  *
@@ -15,4 +18,13 @@ import org.springframework.stereotype.Component;
 public class PathConfig {
 
   private String image;
+
+  /**
+   * 受信中の画像や生成中の縮小画像を書き込む一時ディレクトリを取得する。画像実体と同一のファイルシステム上に置き、保存時に移動のみで済ませる
+   *
+   * @return Path 一時ディレクトリまでのpath
+   */
+  public Path getTemporaryDirectory() {
+    return Paths.get(image, "tmp");
+  }
 }
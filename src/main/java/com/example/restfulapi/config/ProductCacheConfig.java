@@ -0,0 +1,20 @@
+package com.example.restfulapi.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * id単位のProductキャッシュの上限を管理するConfigurationクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConfigurationProperties(prefix = "cache.product")
+@Data
+public class ProductCacheConfig {
+
+  private int maxSize = 10000;
+
+  private long ttlSeconds = 60;
+}
@@ -0,0 +1,48 @@
+package com.example.restfulapi.config;
+
+import com.example.restfulapi.constant.UrlPatterns;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * リクエスト数の上限を管理するConfigurationクラス
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConfigurationProperties(prefix = "ratelimit")
+@Data
+public class RateLimitConfig {
+
+  private boolean enabled = true;
+
+  /** apisに指定のないAPIに対する、認証済みのクライアントごとの上限 */
+  private Limit defaultLimit = new Limit();
+
+  /** IPアドレスごとの上限。認証より前に判定し、認証されなかったリクエストのみを数える */
+  private Limit address = new Limit(50, 100);
+
+  /** UrlPatternsの名前をキーとした、APIごとの認証済みのクライアント単位の上限 */
+  private Map<UrlPatterns, Limit> apis = new HashMap<>();
+
+  /** 上限を超えたクライアント、IPアドレスの記録を破棄する間隔 */
+  private long cleanupIntervalMillis = 60000;
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Limit {
+
+    /** 1秒あたりに補充されるリクエスト数 */
+    private double requestsPerSecond = 20;
+
+    /** 連続して受け付けられるリクエスト数の上限 */
+    private int burst = 40;
+  }
+}
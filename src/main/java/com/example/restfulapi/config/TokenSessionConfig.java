@@ -1,5 +1,6 @@
 package com.example.restfulapi.config;
 
+import com.example.restfulapi.constant.TokenMode;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -15,4 +16,16 @@ import org.springframework.stereotype.Component;
 public class TokenSessionConfig {
 
   private int boarderLine;
+
+  /** AccessTokenCacheのエントリをDBで再確認するまでの時間(ミリ秒)。他ノードでの失効はこの時間内に反映される */
+  private long cacheMaxAgeMillis = 10000;
+
+  /** トークンの方式。databaseはaccess_tokenテーブルで管理、signedはHMAC署名による自己完結型 */
+  private TokenMode mode = TokenMode.DATABASE;
+
+  /** signed方式で署名に用いる秘密鍵。32バイト以上とし、全てのAPIノードで同じ値を設定する */
+  private String secret;
+
+  /** signed方式で他ノードの失効をrevoked_tokenテーブルから取り込む間隔(ミリ秒)。他ノードでのログアウトはこの時間内に反映される */
+  private long revocationSyncIntervalMillis = 5000;
 }
@@ -1,29 +1,79 @@
 package com.example.restfulapi.constant;
 
+import java.util.Optional;
+
 /**
  * 登録可能な拡張子をまとめたenum変数
  *
+ * <p>各拡張子は、画像の形式を判定するためのファイル先頭のシグネチャを持つ
+ *
  * @author Natsume Takuya
  */
 public enum AcceptedSuffixes {
-  jpeg,
-  jpg,
-  png,
-  gif;
+  jpeg(0xFF, 0xD8, 0xFF),
+  jpg(0xFF, 0xD8, 0xFF),
+  png(0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A),
+  gif('G', 'I', 'F', '8');
+
+  /** 形式の判定に必要な先頭のバイト数 */
+  public static final int SIGNATURE_LENGTH = 8;
+
+  private final byte[] signature;
+
+  AcceptedSuffixes(int... signature) {
+    this.signature = new byte[signature.length];
+    for (int i = 0; i < signature.length; i++) {
+      this.signature[i] = (byte) signature[i];
+    }
+  }
 
   /**
-   * アップロードされた画像の拡張子が有効でない場合にexceptionを投げるメソッド
+   * アップロードされた画像の拡張子が有効か判定するメソッド
    *
    * @param suffix validationに使用するsuffix
+   * @return boolean 有効な拡張子であればtrue
    */
   public static boolean isSuffixValid(String suffix) {
-    AcceptedSuffixes sentSuffix = valueOf(suffix);
-
     for (AcceptedSuffixes acceptedSuffix : AcceptedSuffixes.values()) {
-      if (sentSuffix == acceptedSuffix) {
+      if (acceptedSuffix.name().equals(suffix)) {
         return true;
       }
     }
     return false;
   }
+
+  /**
+   * 画像の先頭バイトから形式を判定するメソッド
+   *
+   * @param head 画像の先頭バイト
+   * @param length headの有効なバイト数
+   * @return Optional<AcceptedSuffixes> 判定された拡張子。対応していない形式の場合はempty
+   */
+  public static Optional<AcceptedSuffixes> detect(byte[] head, int length) {
+    for (AcceptedSuffixes acceptedSuffix : AcceptedSuffixes.values()) {
+      if (acceptedSuffix.matches(head, length)) {
+        return Optional.of(acceptedSuffix);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * 画像の先頭バイトがシグネチャと一致するか判定するメソッド
+   *
+   * @param head 画像の先頭バイト
+   * @param length headの有効なバイト数
+   * @return boolean 一致すればtrue
+   */
+  private boolean matches(byte[] head, int length) {
+    if (length < signature.length) {
+      return false;
+    }
+    for (int i = 0; i < signature.length; i++) {
+      if (head[i] != signature[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
 }
@@ -0,0 +1,13 @@
+package com.example.restfulapi.constant;
+
+/**
+ * アクセスログのバッファが満杯の場合の動作をまとめたenum変数
+ *
+ * <p>DROPは記録を破棄してリクエストを待たせない。BLOCKは空きができるまでリクエストのスレッドを待たせ、記録を失わない
+ *
+ * @author Natsume Takuya
+ */
+public enum AccessLogPolicy {
+  DROP,
+  BLOCK
+}
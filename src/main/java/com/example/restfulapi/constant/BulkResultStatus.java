@@ -0,0 +1,12 @@
+package com.example.restfulapi.constant;
+
+/**
+ * 一括登録における各Productの処理結果をまとめたenum変数
+ *
+ * @author Natsume Takuya
+ */
+public enum BulkResultStatus {
+  CREATED,
+  INVALID,
+  DUPLICATED
+}
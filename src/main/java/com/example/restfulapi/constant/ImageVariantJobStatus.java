@@ -0,0 +1,12 @@
+package com.example.restfulapi.constant;
+
+/**
+ * 縮小画像生成ジョブの状態をまとめたenum変数
+ *
+ * @author Natsume Takuya
+ */
+public enum ImageVariantJobStatus {
+  PENDING,
+  RUNNING,
+  FAILED
+}
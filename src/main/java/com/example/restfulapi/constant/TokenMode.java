@@ -0,0 +1,13 @@
+package com.example.restfulapi.constant;
+
+/**
+ * API用アクセストークンの方式をまとめたenum変数
+ *
+ * <p>DATABASEはaccess_tokenテーブルに保存したランダムな値、SIGNEDはサブジェクトと有効期限を含みHMACで署名した値
+ *
+ * @author Natsume Takuya
+ */
+public enum TokenMode {
+  DATABASE,
+  SIGNED
+}
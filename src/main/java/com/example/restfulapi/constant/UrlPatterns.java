@@ -5,6 +5,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Pattern;
 
 /**
@@ -23,14 +26,42 @@ public enum UrlPatterns {
   CHANGE_PRODUCT("^(/api/products/)([0-9]+)$", "DELETE", "商品削除API"),
   DELETE_PRODUCT("^(/api/products/)([0-9]+)$", "PATCH", "商品画像更新API"),
   UPDATE_IMAGE("^(/api/products/)([0-9]+)(/images)$", "PATCH", "商品画像更新API"),
+  UPLOAD_IMAGE("^(/api/products/)([0-9]+)(/images)$", "PUT", "商品画像アップロードAPI"),
   GET_IMAGE(
-      "^(/api/products/)([0-9]+)(/images/)([0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12})(.jpeg|.jpg|.png|.gif)$",
+      "^(/api/products/)([0-9]+)(/images/)([0-9a-f]{64}|[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12})(.jpeg|.jpg|.png|.gif)$",
       "GET", "商品画像取得API");
 
+  /** リクエストごとにコンパイルしないよう、URLパターンをあらかじめコンパイルしておく */
+  private static final Map<UrlPatterns, Pattern> COMPILED_PATTERNS =
+      new EnumMap<>(UrlPatterns.class);
+
+  static {
+    for (UrlPatterns url : values()) {
+      COMPILED_PATTERNS.put(url, Pattern.compile(url.getUrlPattern()));
+    }
+  }
+
   private final String urlPattern;
   private final String httpMethod;
   private final String apiName;
 
+  /**
+   * リクエストのURIとHttpメソッドに対応するAPIを取得する
+   *
+   * @param requestUri リクエストのURI
+   * @param httpMethod リクエストのHttpメソッド
+   * @return Optional<UrlPatterns> 対応するAPI。該当しない場合はempty
+   */
+  public static Optional<UrlPatterns> resolve(String requestUri, String httpMethod) {
+    for (UrlPatterns url : values()) {
+      if (url.getHttpMethod().equals(httpMethod)
+          && COMPILED_PATTERNS.get(url).matcher(requestUri).find()) {
+        return Optional.of(url);
+      }
+    }
+    return Optional.empty();
+  }
+
   /**
    * URLとHttpメソッドからAPI名を割り当てる
    *
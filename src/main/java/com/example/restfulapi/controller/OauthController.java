@@ -60,8 +60,7 @@ public class OauthController {
   @GetMapping("/github/callback")
   public String callback(@RequestParam String code) {
     String oauthToken = oauthService.getOauthToken(code);
-    String generatedToken = oauthService.generateToken();
-    oauthService.processAccessToken(generatedToken);
+    String generatedToken = oauthService.issueAccessToken(oauthToken);
     httpSession.setAttribute(TOKEN, oauthToken);
     httpSession.setAttribute("accessToken", generatedToken);
     return "redirect:/github";
@@ -87,12 +86,14 @@ public class OauthController {
   }
 
   /**
-   * Github logoutを実行するメソッド
+   * Github logoutを実行するメソッド。発行したAPI用のアクセストークンも無効にする
    *
    * @return String トップページにリダイレクト
    */
   @GetMapping("/logout")
   public String logout() {
+    oauthService.revokeToken((String) httpSession.getAttribute("accessToken"));
+    oauthService.evictUserInfo((String) httpSession.getAttribute(TOKEN));
     httpSession.invalidate();
     return "redirect:/";
   }
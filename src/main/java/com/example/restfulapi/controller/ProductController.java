@@ -1,20 +1,32 @@
 package com.example.restfulapi.controller;
 
 import com.example.restfulapi.config.PathConfig;
+import com.example.restfulapi.dto.BulkResultDto;
 import com.example.restfulapi.dto.ProductDto;
-import com.example.restfulapi.entity.Product;
+import com.example.restfulapi.dto.ProductPageDto;
 import com.example.restfulapi.form.ProductForm;
+import com.example.restfulapi.service.ImageBlobService;
 import com.example.restfulapi.service.ProductService;
+import com.example.restfulapi.storage.UploadedImage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.http.HttpEntity;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
 import java.util.List;
 
@@ -28,7 +40,16 @@ import java.util.List;
 @Slf4j
 public class ProductController {
 
+  private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+  private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+  private static final String NO_CACHE_CONTROL = "no-cache";
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
   private final ProductService productService;
+  private final ImageBlobService imageBlobService;
   private final PathConfig pathConfig;
 
   /**
@@ -44,16 +65,36 @@ public class ProductController {
     return productService.registerProduct(productForm);
   }
 
+  /**
+   * Productの一括登録を行うメソッド
+   *
+   * @param productForms 入力を受けるProductFormクラスの配列
+   * @return List<BulkResultDto> 1件ごとの処理結果のリスト
+   */
+  @PostMapping("/api/products/bulk")
+  @ResponseStatus(HttpStatus.OK)
+  public List<BulkResultDto> registerProducts(@RequestBody List<ProductForm> productForms) {
+
+    return productService.registerProducts(productForms);
+  }
+
   /**
    * Productの取得を行うメソッド。Title引数(任意)を渡すと部分一致検索を行う
    *
+   * <p>If-None-Matchがカタログ全体のETagと一致する場合は、一覧を生成せずに304を返す
+   *
    * @param title 検索に使う入力文字
+   * @param webRequest WebRequestクラス
    * @return List<ProductDTO> 全ProductのリストかTitleが部分一致のProductのリスト
    */
+  // 304を返す際にステータスが上書きされないよう、@ResponseStatusは付与しない
   @GetMapping("/api/products")
-  @ResponseStatus(HttpStatus.OK)
-  public List<ProductDto> searchProducts(@RequestParam(required = false) String title) {
+  public List<ProductDto> searchProducts(
+      @RequestParam(required = false) String title, WebRequest webRequest) {
 
+    if (webRequest.checkNotModified(productService.createCatalogETag())) {
+      return null;
+    }
     if (StringUtils.isBlank(title)) {
       return productService.findAllOrderByUpdateTime();
     } else {
@@ -61,17 +102,96 @@ public class ProductController {
     }
   }
 
+  /**
+   * Productをカーソルによりページ単位で取得するメソッド。Title引数(任意)を渡すと部分一致検索を行う
+   *
+   * @param title 検索に使う入力文字
+   * @param limit 1ページあたりの取得件数
+   * @param next 前ページのレスポンスに含まれるカーソル(任意)
+   * @param webRequest WebRequestクラス
+   * @return ProductPageDto 該当ページのProductと次ページのカーソル
+   */
+  @GetMapping(value = "/api/products", params = "limit")
+  public ProductPageDto searchProductsByPage(
+      @RequestParam(required = false) String title,
+      @RequestParam int limit,
+      @RequestParam(required = false) String next,
+      WebRequest webRequest) {
+
+    if (webRequest.checkNotModified(productService.createCatalogETag())) {
+      return null;
+    }
+    return productService.findPageOrderByUpdateTime(title, limit, next);
+  }
+
+  /**
+   * Productをストリーミングで取得するメソッド。Title引数(任意)を渡すと部分一致検索を行う。Acceptがapplication/x-ndjsonの場合はndjson形式で返す
+   *
+   * <p>limitを伴う場合はページ単位の取得と競合しないよう、searchProductsByPageに委ねる
+   *
+   * @param title 検索に使う入力文字
+   * @param request HttpServletRequestクラス
+   * @param response HttpServletResponseクラス
+   * @throws IOException レスポンス書き出し時の例外を投げるIOExceptionクラス
+   */
+  @GetMapping(value = "/api/products", params = {"stream=true", "!limit"})
+  public void streamProducts(
+      @RequestParam(required = false) String title,
+      HttpServletRequest request,
+      HttpServletResponse response)
+      throws IOException {
+    String accept = request.getHeader(HttpHeaders.ACCEPT);
+    writeProducts(response, title, accept != null && accept.contains(APPLICATION_NDJSON_VALUE));
+  }
+
+  /**
+   * Productをndjson形式のストリーミングで取得するメソッド。Title引数(任意)を渡すと部分一致検索を行う
+   *
+   * @param title 検索に使う入力文字
+   * @param response HttpServletResponseクラス
+   * @throws IOException レスポンス書き出し時の例外を投げるIOExceptionクラス
+   */
+  @GetMapping(value = "/api/products", params = "!limit", produces = APPLICATION_NDJSON_VALUE)
+  public void streamProductsAsNdjson(
+      @RequestParam(required = false) String title, HttpServletResponse response)
+      throws IOException {
+    writeProducts(response, title, true);
+  }
+
+  /**
+   * Productをレスポンスへ直接書き出すメソッド
+   *
+   * @param response HttpServletResponseクラス
+   * @param title 検索に使う入力文字。空の場合は全件を書き出す
+   * @param ndjson ndjson形式で書き出す場合はtrue
+   * @throws IOException レスポンス書き出し時の例外を投げるIOExceptionクラス
+   */
+  private void writeProducts(HttpServletResponse response, String title, boolean ndjson)
+      throws IOException {
+    response.setStatus(HttpStatus.OK.value());
+    response.setCharacterEncoding("UTF-8");
+    response.setContentType(ndjson ? APPLICATION_NDJSON_VALUE : MediaType.APPLICATION_JSON_VALUE);
+    productService.writeOrderByUpdateTime(title, response.getOutputStream(), ndjson);
+  }
+
   /**
    * ProductをIDを元に取得するメソッド
    *
+   * <p>If-None-Match、あるいはIf-Modified-Sinceが現在のProductと一致する場合は304を返す
+   *
    * @param id 検索対象ProductのId
+   * @param webRequest WebRequestクラス
    * @return ProductDTO Idに該当するProductのDTOクラス
    */
   @GetMapping("/api/products/{id}")
-  @ResponseStatus(HttpStatus.OK)
-  public ProductDto searchProductsById(@PathVariable("id") BigInteger id) {
-    Product product = productService.findById(id);
-    return productService.convertToProductDto(product);
+  public ProductDto searchProductsById(@PathVariable("id") BigInteger id, WebRequest webRequest) {
+    ProductDto productDto = productService.findDtoById(id);
+    if (webRequest.checkNotModified(
+        productService.createETag(productDto),
+        productService.toEpochMilli(productDto.getUpdateTime()))) {
+      return null;
+    }
+    return productDto;
   }
 
   /**
@@ -114,25 +234,110 @@ public class ProductController {
       @PathVariable("id") BigInteger id, @RequestParam("productImage") MultipartFile productImage)
       throws IOException {
 
-    return productService.updateImage(id, productImage);
+    productService.findDtoById(id);
+    UploadedImage image;
+    try (InputStream inputStream = productImage.getInputStream()) {
+      image = imageBlobService.receive(inputStream, productImage.getSize());
+    }
+    return productService.updateImage(id, image);
+  }
+
+  /**
+   * リクエストボディの画像をそのまま受信して画像の更新を行うメソッド
+   *
+   * <p>multipartと異なりリクエスト全体をバッファせず、先頭バイトによる形式判定とサイズ上限の確認を受信しながら行う
+   *
+   * @param id 画像更新対象ProductのId
+   * @param request リクエストボディに画像を持つHttpServletRequest
+   * @return ProductDTO 更新されたProductのDTOクラス
+   */
+  @PutMapping(
+      value = "/api/products/{id}/images",
+      consumes = {
+        MediaType.IMAGE_JPEG_VALUE,
+        MediaType.IMAGE_PNG_VALUE,
+        MediaType.IMAGE_GIF_VALUE,
+        MediaType.APPLICATION_OCTET_STREAM_VALUE
+      })
+  @ResponseStatus(HttpStatus.OK)
+  public ProductDto uploadImage(@PathVariable("id") BigInteger id, HttpServletRequest request)
+      throws IOException {
+
+    // 存在しないProductへの画像は受信せずに404とする
+    productService.findDtoById(id);
+    UploadedImage image =
+        imageBlobService.receive(request.getInputStream(), request.getContentLengthLong());
+    return productService.updateImage(id, image);
   }
 
   /**
    * 画像の取得を行うメソッド
    *
+   * <p>wが指定された場合は、その幅以上で最も小さい縮小画像を返す。縮小画像が生成前の場合は元画像を返す
+   *
    * @param id 画像取得対象ProductのId
    * @param path 取得対象画像のpath
    * @param suffix 取得対象画像の拡張子
-   * @return HttpEntity<byte[]> バイト配列に変換された画像ファイル
+   * @param width 要求する画像の幅(px)
+   * @param request HttpServletRequestクラス
+   * @param response HttpServletResponseクラス
+   * @param webRequest WebRequestクラス
+   * @return ResponseEntity<Resource> 画像ファイル
    */
   @GetMapping("/api/products/{id}/images/{path}.{suffix}")
-  @ResponseStatus(HttpStatus.OK)
-  public HttpEntity<byte[]> getImage(
+  public ResponseEntity<Resource> getImage(
       @PathVariable("id") BigInteger id,
       @PathVariable("path") String path,
-      @PathVariable("suffix") String suffix)
+      @PathVariable("suffix") String suffix,
+      @RequestParam(value = "w", required = false) Integer width,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws IOException {
 
-    return productService.getImage(id, path, suffix);
+    // 画像のURLはアップロードごとに変わり、同じURLの内容は変化しないためimmutableとしてキャッシュさせる
+    // ただし縮小画像の生成前に元画像を返した場合は、生成後に差し替わるようキャッシュを再検証させる
+    String imageKey = productService.resolveImageKey(id, path, suffix, width);
+    String cacheControl =
+        productService.isImageVariantPending(path, width, imageKey)
+            ? NO_CACHE_CONTROL
+            : IMMUTABLE_CACHE_CONTROL;
+    if (webRequest.checkNotModified("\"" + imageKey + "\"")) {
+      response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+      return null;
+    }
+    ResponseEntity<Resource> image = productService.getImage(id, path, suffix, imageKey);
+    response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+    Resource body = image.getBody();
+    if (body instanceof FileSystemResource
+        && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+        && request.getHeader(HttpHeaders.RANGE) == null) {
+      return sendFile(((FileSystemResource) body).getFile(), image.getHeaders(), request);
+    }
+    return image;
+  }
+
+  /**
+   * Tomcatのsendfileを用いて、ファイルの内容をJavaヒープを経由せずにソケットへ転送するメソッド
+   *
+   * <p>本文はレスポンス完了後にTomcatが送信するため、ここではヘッダーのみを返す
+   *
+   * @param file 送信するファイル
+   * @param headers Content-Typeなどを持つHttpHeadersクラス
+   * @param request HttpServletRequestクラス
+   * @return ResponseEntity<Resource> 本文を持たないレスポンス
+   * @throws IOException ファイルパス解決時の例外を投げるIOExceptionクラス
+   */
+  private ResponseEntity<Resource> sendFile(
+      File file, HttpHeaders headers, HttpServletRequest request) throws IOException {
+    long length = file.length();
+    request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+    request.setAttribute(SENDFILE_START, 0L);
+    request.setAttribute(SENDFILE_END, length);
+    return ResponseEntity.ok()
+        .headers(headers)
+        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+        .contentLength(length)
+        .build();
   }
 }
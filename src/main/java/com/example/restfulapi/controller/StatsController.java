@@ -0,0 +1,53 @@
+package com.example.restfulapi.controller;
+
+import com.example.restfulapi.cache.AccessTokenCache;
+import com.example.restfulapi.cache.ImageCache;
+import com.example.restfulapi.cache.ProductCache;
+import com.example.restfulapi.cache.UserInfoCache;
+import com.example.restfulapi.filter.AuthenticationFilter;
+import com.example.restfulapi.filter.RateLimitFilter;
+import com.example.restfulapi.logger.AccessLogWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * キャッシュなどの統計情報を参照するコントローラークラス
+ *
+ * <p>認証やリクエスト数制限の内部状態を含むため、AuthenticationFilterが適用される/api/配下に置く
+ *
+ * @author Natsume Takuya
+ */
+@RestController
+@RequiredArgsConstructor
+public class StatsController {
+
+  private final ProductCache productCache;
+  private final ImageCache imageCache;
+  private final AccessTokenCache accessTokenCache;
+  private final UserInfoCache userInfoCache;
+  private final AuthenticationFilter authenticationFilter;
+  private final RateLimitFilter rateLimitFilter;
+  private final AccessLogWriter accessLogWriter;
+
+  /**
+   * 統計情報を取得する
+   *
+   * @return Map<String, Object> 統計情報の名称とその値
+   */
+  @GetMapping("/api/stats")
+  public Map<String, Object> stats() {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("productCache", productCache.getStats());
+    stats.put("imageCache", imageCache.getStats());
+    stats.put("accessTokenCache", accessTokenCache.getStats());
+    stats.put("userInfoCache", userInfoCache.getStats());
+    stats.put("authentication", authenticationFilter.getStats());
+    stats.put("rateLimit", rateLimitFilter.getStats());
+    stats.put("accessLog", accessLogWriter.getStats());
+    return stats;
+  }
+}
@@ -0,0 +1,20 @@
+package com.example.restfulapi.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * アクセスログ出力の統計情報DTOクラス
+ *
+ * @author Natsume Takuya
+ */
+@Data
+@Builder
+public class AccessLogStatsDto {
+
+  private long written;
+
+  private long dropped;
+
+  private long queued;
+}
@@ -0,0 +1,22 @@
+package com.example.restfulapi.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 認証処理の統計情報DTOクラス
+ *
+ * @author Natsume Takuya
+ */
+@Data
+@Builder
+public class AuthenticationStatsDto {
+
+  private long requests;
+
+  private long rejected;
+
+  private long averageMicros;
+
+  private long maxMicros;
+}
@@ -0,0 +1,26 @@
+package com.example.restfulapi.dto;
+
+import com.example.restfulapi.constant.BulkResultStatus;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * 一括登録における1件ごとの処理結果DTOクラス
+ *
+ * @author Natsume Takuya
+ */
+@Data
+@Builder
+public class BulkResultDto {
+
+  /** リクエスト配列内での位置 */
+  private int index;
+
+  private BulkResultStatus status;
+
+  /** 登録に成功した場合のProduct */
+  private ProductDto product;
+
+  /** 登録に失敗した場合の理由 */
+  private String message;
+}
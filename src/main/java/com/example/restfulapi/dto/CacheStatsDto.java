@@ -0,0 +1,22 @@
+package com.example.restfulapi.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * キャッシュの統計情報DTOクラス
+ *
+ * @author Natsume Takuya
+ */
+@Data
+@Builder
+public class CacheStatsDto {
+
+  private long hits;
+
+  private long misses;
+
+  private long evictions;
+
+  private long size;
+}
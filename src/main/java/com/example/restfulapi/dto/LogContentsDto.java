@@ -23,5 +23,19 @@ public class LogContentsDto {
 
   double executionTime;
 
+  /** 実行時間のパーセンタイルと最大値(ミリ秒)。分布が記録されていない場合はnull */
+  Double p50;
+
+  Double p95;
+
+  Double p99;
+
+  Double maxExecutionTime;
+
+  /** ハンドラが本文を書き始めるまでの時間の平均と95パーセンタイル(ミリ秒)。記録されていない場合はnull */
+  Double timeToFirstByte;
+
+  Double firstByteP95;
+
   LocalDate date;
 }
@@ -26,6 +26,8 @@ public class ProductDto {
 
   private String imagePath;
 
+  private long version;
+
   @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
   private LocalDateTime createTime;
 
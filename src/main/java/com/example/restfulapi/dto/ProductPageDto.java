@@ -0,0 +1,21 @@
+package com.example.restfulapi.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * ページ単位で返却するProductのDTOクラス
+ *
+ * @author Natsume Takuya
+ */
+@Data
+@Builder
+public class ProductPageDto {
+
+  private List<ProductDto> products;
+
+  /** 次ページ取得用のカーソル。次ページが存在しない場合はnull */
+  private String next;
+}
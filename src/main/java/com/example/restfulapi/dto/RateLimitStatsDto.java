@@ -0,0 +1,24 @@
+package com.example.restfulapi.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * リクエスト数制限の統計情報DTOクラス
+ *
+ * @author Natsume Takuya
+ */
+@Data
+@Builder
+public class RateLimitStatsDto {
+
+  private long allowed;
+
+  private long rejected;
+
+  private Map<String, Long> rejectedByLimit;
+
+  private long buckets;
+}
@@ -0,0 +1,28 @@
+package com.example.restfulapi.entity;
+
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+
+/**
+ * 内容のSHA-256をキーとして保存される画像実体のEntityクラス
+ *
+ * @author Natsume Takuya
+ */
+@Entity
+@Table(name = "image_blob")
+@Data
+public class ImageBlob {
+
+  @Id String hash;
+
+  long size;
+
+  int refCount;
+
+  @CreationTimestamp private LocalDateTime createTime;
+}
@@ -0,0 +1,38 @@
+package com.example.restfulapi.entity;
+
+import com.example.restfulapi.constant.ImageVariantJobStatus;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import javax.persistence.*;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+
+/**
+ * 縮小画像生成ジョブのEntityクラス。完了したジョブは削除される
+ *
+ * @author Natsume Takuya
+ */
+@Entity
+@Table(name = "image_variant_job")
+@Data
+public class ImageVariantJob {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  BigInteger id;
+
+  String hash;
+
+  String suffix;
+
+  @Enumerated(EnumType.STRING)
+  ImageVariantJobStatus status;
+
+  int attempts;
+
+  @CreationTimestamp private LocalDateTime createTime;
+
+  @UpdateTimestamp private LocalDateTime updateTime;
+}
@@ -30,6 +30,16 @@ public class LogContents {
 
   double executionTime;
 
+  double maxExecutionTime;
+
+  /** LatencyHistogram.encodeで変換した実行時間の分布。導入前に集計した行はnull */
+  String histogram;
+
+  /** ハンドラが本文を書き始めるまでの時間の平均。記録されていない場合はnull */
+  Double timeToFirstByte;
+
+  String firstByteHistogram;
+
   LocalDate date;
 
   String fileName;
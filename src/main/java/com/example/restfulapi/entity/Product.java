@@ -24,12 +24,17 @@ public class Product {
 
   String title;
 
+  /** ProductTitleIndex.normalizeで正規化したtitle。titleインデックスを使えない場合のLIKE検索に用いる */
+  String titleNormalized;
+
   String description;
 
   int price;
 
   String imagePath;
 
+  @Version long version;
+
   @CreationTimestamp private LocalDateTime createTime;
 
   @UpdateTimestamp private LocalDateTime updateTime;
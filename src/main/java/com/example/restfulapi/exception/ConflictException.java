@@ -0,0 +1,15 @@
+package com.example.restfulapi.exception;
+
+/**
+ * ConflictExceptionクラス
+ *
+ * @author Natsume Takuya
+ */
+public class ConflictException extends RuntimeException {
+
+  private static final long serialVersionUID = -3108472297406913512L;
+
+  public ConflictException(String message) {
+    super(message);
+  }
+}
@@ -9,12 +9,12 @@ import lombok.Value;
  * @author Natsume Takuya
  */
 @Value
-class ErrorResponse {
+public class ErrorResponse {
 
   @JsonProperty("Error")
   private Error error;
 
-  ErrorResponse(String detail, String code) {
+  public ErrorResponse(String detail, String code) {
     error = new Error(detail, code);
   }
 
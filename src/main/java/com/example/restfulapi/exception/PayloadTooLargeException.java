@@ -0,0 +1,15 @@
+package com.example.restfulapi.exception;
+
+/**
+ * PayloadTooLargeExceptionクラス
+ *
+ * @author Natsume Takuya
+ */
+public class PayloadTooLargeException extends RuntimeException {
+
+  private static final long serialVersionUID = 3160281496731254876L;
+
+  public PayloadTooLargeException(String message) {
+    super(message);
+  }
+}
@@ -84,9 +84,9 @@ public class ProductExceptionHandler extends ResponseEntityExceptionHandler {
    * @param request WebRequestクラス
    * @return ResponseEntity<Object> json形式のレスポンス
    */
-  @ExceptionHandler({IllegalArgumentException.class})
+  @ExceptionHandler({UnsupportedMediaException.class, IllegalArgumentException.class})
   public ResponseEntity<Object> handleIllegalArgumentException(
-      IllegalArgumentException ex, WebRequest request) {
+      RuntimeException ex, WebRequest request) {
     log.warn(ex.getMessage(), ex);
     HttpHeaders headers = new HttpHeaders();
     HttpStatus status = HttpStatus.UNSUPPORTED_MEDIA_TYPE;
@@ -161,6 +161,46 @@ public class ProductExceptionHandler extends ResponseEntityExceptionHandler {
     return handleExceptionInternal(ex, body, headers, status, request);
   }
 
+  /**
+   * 409 : 楽観ロックにより、他の更新と競合した場合に対応
+   *
+   * @param ex ConflictExceptionクラス
+   * @param request WebRequestクラス
+   * @return ResponseEntity<Object> json形式のレスポンス
+   */
+  @ExceptionHandler({ConflictException.class})
+  public ResponseEntity<Object> handleConflictException(ConflictException ex, WebRequest request) {
+    log.warn(ex.getMessage(), ex);
+    HttpHeaders headers = new HttpHeaders();
+    HttpStatus status = HttpStatus.CONFLICT;
+    String errorLog = ex.getMessage();
+    ErrorResponse body =
+        new ErrorResponse(
+            messageSource.getMessage("error.products.conflict.detail", null, Locale.JAPAN),
+            errorLog);
+    return handleExceptionInternal(ex, body, headers, status, request);
+  }
+
+  /**
+   * 413 : アップロードされた画像がサイズの上限を超えた場合に対応
+   *
+   * @param ex PayloadTooLargeExceptionクラス
+   * @param request WebRequestクラス
+   * @return ResponseEntity<Object> json形式のレスポンス
+   */
+  @ExceptionHandler({PayloadTooLargeException.class})
+  public ResponseEntity<Object> handlePayloadTooLargeException(
+      PayloadTooLargeException ex, WebRequest request) {
+    log.warn(ex.getMessage(), ex);
+    HttpHeaders headers = new HttpHeaders();
+    HttpStatus status = HttpStatus.PAYLOAD_TOO_LARGE;
+    String errorLog = ex.getMessage();
+    ErrorResponse body =
+        new ErrorResponse(
+            messageSource.getMessage("error.products.image.size", null, Locale.JAPAN), errorLog);
+    return handleExceptionInternal(ex, body, headers, status, request);
+  }
+
   /**
    * 500 : ディレクトリの作成やファイルの処理のエラーに対応
    *
@@ -0,0 +1,155 @@
+package com.example.restfulapi.filter;
+
+import com.example.restfulapi.dto.AuthenticationStatsDto;
+import com.example.restfulapi.exception.ErrorResponse;
+import com.example.restfulapi.service.OauthService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.MessageSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * API使用の際、認証を行うFilterクラス
+ *
+ * <p>Authorizationヘッダーのトークンを1度だけ解析、検証し、利用者をPrincipalとしてリクエストに設定する。認証に失敗したリクエストはDispatcherServletに渡さずに401を返す
+ *
+ * <p>認証に用いたトークン、あるいはセッションはCLIENT_ATTRIBUTEとしてリクエストに設定し、後続のFilterがクライアントごとのリクエスト数制限に用いる
+ *
+ * @author Natsume Takuya
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class AuthenticationFilter extends OncePerRequestFilter {
+
+  /** Githubログイン済みのセッションで呼び出された場合の利用者の名前 */
+  private static final String SESSION_PRINCIPAL = "github-session";
+
+  /** 認証済みのクライアントを表すリクエスト属性の名前 */
+  public static final String CLIENT_ATTRIBUTE = AuthenticationFilter.class.getName() + ".CLIENT";
+
+  private final OauthService oauthService;
+  private final MessageSource messageSource;
+  private final ObjectMapper objectMapper;
+
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  /**
+   * Filterで行う内容を記述するメソッド
+   *
+   * @param request HttpServletRequestクラス
+   * @param response HttpServletResponseクラス
+   * @param chain FilterChainクラス
+   * @throws IOException IOExceptionクラス
+   * @throws ServletException ServletExceptionクラス
+   */
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    long start = System.nanoTime();
+    Optional<String> principalName = authenticate(request);
+    record(System.nanoTime() - start, principalName.isPresent());
+
+    if (principalName.isEmpty()) {
+      log.warn("Access Token sent for API is not valid");
+      reject(response);
+      return;
+    }
+    Principal principal = principalName::get;
+    chain.doFilter(
+        new HttpServletRequestWrapper(request) {
+          @Override
+          public Principal getUserPrincipal() {
+            return principal;
+          }
+        },
+        response);
+  }
+
+  /**
+   * 認証処理の統計情報を取得する
+   *
+   * @return AuthenticationStatsDto 認証したリクエスト数、拒否した数、平均と最大の処理時間
+   */
+  public AuthenticationStatsDto getStats() {
+    long count = requests.get();
+    return AuthenticationStatsDto.builder()
+        .requests(count)
+        .rejected(rejected.get())
+        .averageMicros(count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos.get() / count))
+        .maxMicros(TimeUnit.NANOSECONDS.toMicros(maxNanos.get()))
+        .build();
+  }
+
+  /**
+   * Githubログイン済みのセッション、あるいはAuthorizationヘッダーのトークンで利用者を特定し、認証に用いたクライアントをリクエストに設定する
+   *
+   * @param request HttpServletRequestクラス
+   * @return Optional<String> 利用者の名前。認証できない場合はempty
+   */
+  private Optional<String> authenticate(HttpServletRequest request) {
+    // セッションが存在しない場合に新たに生成しない
+    HttpSession session = request.getSession(false);
+    if (session != null && session.getAttribute("token") != null) {
+      request.setAttribute(CLIENT_ATTRIBUTE, "session " + session.getId());
+      return Optional.of(SESSION_PRINCIPAL);
+    }
+    String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+    Optional<String> principalName = oauthService.authenticate(authorization);
+    principalName.ifPresent(name -> request.setAttribute(CLIENT_ATTRIBUTE, authorization));
+    return principalName;
+  }
+
+  /**
+   * 認証の処理時間を記録する
+   *
+   * @param elapsedNanos 認証にかかった時間
+   * @param authenticated 認証に成功した場合はtrue
+   */
+  private void record(long elapsedNanos, boolean authenticated) {
+    requests.incrementAndGet();
+    if (!authenticated) {
+      rejected.incrementAndGet();
+    }
+    totalNanos.addAndGet(elapsedNanos);
+    maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+  }
+
+  /**
+   * 401のレスポンスを返す。本文はProductExceptionHandlerと同じ形式とする
+   *
+   * @param response HttpServletResponseクラス
+   * @throws IOException IOExceptionクラス
+   */
+  private void reject(HttpServletResponse response) throws IOException {
+    ErrorResponse body =
+        new ErrorResponse(
+            messageSource.getMessage("error.products.unauthorized", null, Locale.JAPAN),
+            messageSource.getMessage("error.products.unauthorized.code", null, Locale.JAPAN));
+    response.setStatus(HttpStatus.UNAUTHORIZED.value());
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    objectMapper.writeValue(response.getOutputStream(), body);
+  }
+}
@@ -0,0 +1,275 @@
+package com.example.restfulapi.filter;
+
+import com.example.restfulapi.config.RateLimitConfig;
+import com.example.restfulapi.constant.UrlPatterns;
+import com.example.restfulapi.dto.RateLimitStatsDto;
+import com.example.restfulapi.exception.ErrorResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.MessageSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * IPアドレスごと、認証済みのクライアントごとにリクエスト数を制限するFilterクラス
+ *
+ * <p>IPアドレスごとの上限は認証より前に判定し、無効なトークンを大量に送るリクエストが認証処理やDBに届く前に拒否する。バケットから差し引くのは認証されなかったリクエストのみとし、共有NATの背後にいる認証済みのクライアントを匿名の上限で制限しない。認証済みのクライアントには、AuthenticationFilterの後にgetClientFilterで取得するFilterでクライアントごとの上限を適用する。未検証のAuthorizationヘッダーをキーにしないため、リクエストごとにトークンを変えても上限を回避できず、バケットも増えない
+ *
+ * <p>IPアドレスはrequest.getRemoteAddr()で取得する。ロードバランサやリバースプロキシの背後では、server.forward-headers-strategy: nativeによりTomcatのRemoteIpValveが信頼するプロキシのX-Forwarded-Forからクライアントのアドレスを復元する。信頼しないアドレスから届いたX-Forwarded-Forは無視するため、ヘッダーを偽装しても上限を回避できない
+ *
+ * <p>トークンバケットをGCRA(Generic Cell Rate Algorithm)で実装する。バケット1つにつき次にリクエストが補充される理論上の時刻のみをAtomicLongで保持し、CASで更新するため、ロックを取らずに判定できる。上限を超えたリクエストには429とRetry-Afterを返す
+ *
+ * @author Natsume Takuya
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+  private static final String DEFAULT_LIMIT = "DEFAULT";
+  private static final String ADDRESS_LIMIT = "ADDRESS";
+
+  private final RateLimitConfig rateLimitConfig;
+  private final MessageSource messageSource;
+  private final ObjectMapper objectMapper;
+
+  /** 上限の名前とクライアントをキーとした、次のリクエストが補充される理論上の時刻(System.nanoTime()基準) */
+  private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+  private final LongAdder allowed = new LongAdder();
+  private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+
+  private final ClientRateLimitFilter clientFilter = new ClientRateLimitFilter();
+
+  /**
+   * Filterで行う内容を記述するメソッド
+   *
+   * @param request HttpServletRequestクラス
+   * @param response HttpServletResponseクラス
+   * @param chain FilterChainクラス
+   * @throws IOException IOExceptionクラス
+   * @throws ServletException ServletExceptionクラス
+   */
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!rateLimitConfig.isEnabled()) {
+      chain.doFilter(request, response);
+      return;
+    }
+    String key = ADDRESS_LIMIT + " " + request.getRemoteAddr();
+    RateLimitConfig.Limit limit = rateLimitConfig.getAddress();
+    if (!admit(request, response, ADDRESS_LIMIT, peek(key, limit))) {
+      return;
+    }
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      // 認証済みのクライアントはクライアントごとの上限で制限するため、IPアドレスごとの上限からは差し引かない
+      if (request.getAttribute(AuthenticationFilter.CLIENT_ATTRIBUTE) == null) {
+        acquire(key, limit);
+      }
+    }
+  }
+
+  /**
+   * 認証済みのクライアントごとにリクエスト数を制限するFilterを取得する。AuthenticationFilterの後に実行する
+   *
+   * @return OncePerRequestFilter クライアントごとの上限を適用するFilter
+   */
+  public OncePerRequestFilter getClientFilter() {
+    return clientFilter;
+  }
+
+  /**
+   * リクエスト数制限の統計情報を取得する
+   *
+   * @return RateLimitStatsDto 受け付けた数、拒否した数、上限ごとの拒否数、バケット数
+   */
+  public RateLimitStatsDto getStats() {
+    Map<String, Long> rejectedByLimit = new TreeMap<>();
+    rejected.forEach((limitName, count) -> rejectedByLimit.put(limitName, count.sum()));
+    return RateLimitStatsDto.builder()
+        .allowed(allowed.sum())
+        .rejected(rejectedByLimit.values().stream().mapToLong(Long::longValue).sum())
+        .rejectedByLimit(rejectedByLimit)
+        .buckets(buckets.size())
+        .build();
+  }
+
+  /** 満杯まで補充されたバケットは新規のバケットと同じ状態のため、破棄してメモリを解放する */
+  @Scheduled(fixedDelayString = "${ratelimit.cleanupIntervalMillis:60000}")
+  public void cleanup() {
+    long now = System.nanoTime();
+    buckets.values().removeIf(theoreticalArrival -> theoreticalArrival.get() - now <= 0);
+  }
+
+  /**
+   * バケットからリクエスト1件分を取り出し、取り出せなかった場合は429を返す
+   *
+   * @param request HttpServletRequestクラス
+   * @param response HttpServletResponseクラス
+   * @param limitName 上限の名前
+   * @param client IPアドレス、あるいは認証済みのクライアント
+   * @param limit 適用する上限
+   * @return boolean 取り出せた場合はtrue
+   * @throws IOException IOExceptionクラス
+   */
+  private boolean tryAcquire(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      String limitName,
+      String client,
+      RateLimitConfig.Limit limit)
+      throws IOException {
+    return admit(request, response, limitName, acquire(limitName + " " + client, limit));
+  }
+
+  /**
+   * 待ち時間がなければリクエストを受け付け、待ち時間があれば429を返す
+   *
+   * @param request HttpServletRequestクラス
+   * @param response HttpServletResponseクラス
+   * @param limitName 上限の名前
+   * @param waitNanos 次にリクエストを受け付けられるまでの時間(ナノ秒)。受け付けられる場合は0以下
+   * @return boolean 受け付けた場合はtrue
+   * @throws IOException IOExceptionクラス
+   */
+  private boolean admit(
+      HttpServletRequest request, HttpServletResponse response, String limitName, long waitNanos)
+      throws IOException {
+    if (waitNanos > 0) {
+      rejected.computeIfAbsent(limitName, key -> new LongAdder()).increment();
+      log.warn("Rate limit exceeded : {} {}", limitName, request.getRequestURI());
+      reject(response, waitNanos);
+      return false;
+    }
+    allowed.increment();
+    return true;
+  }
+
+  /**
+   * バケットからリクエスト1件分を取り出す
+   *
+   * @param key 上限の名前とクライアントから成るバケットのキー
+   * @param limit 適用する上限
+   * @return long 取り出せた場合は0、取り出せなかった場合は次に取り出せるまでの時間(ナノ秒)
+   */
+  private long acquire(String key, RateLimitConfig.Limit limit) {
+    long interval = intervalOf(limit);
+    AtomicLong theoreticalArrival =
+        buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+    while (true) {
+      long now = System.nanoTime();
+      long current = theoreticalArrival.get();
+      long waitNanos = waitNanos(current, now, limit);
+      if (waitNanos > 0) {
+        return waitNanos;
+      }
+      if (theoreticalArrival.compareAndSet(current, Math.max(current, now) + interval)) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * バケットからリクエスト1件分を取り出せるか、取り出さずに判定する
+   *
+   * @param key 上限の名前とクライアントから成るバケットのキー
+   * @param limit 適用する上限
+   * @return long 取り出せる場合は0以下、取り出せない場合は次に取り出せるまでの時間(ナノ秒)
+   */
+  private long peek(String key, RateLimitConfig.Limit limit) {
+    AtomicLong theoreticalArrival = buckets.get(key);
+    long now = System.nanoTime();
+    return theoreticalArrival == null ? 0 : waitNanos(theoreticalArrival.get(), now, limit);
+  }
+
+  /**
+   * 次にリクエストが補充される理論上の時刻から、1件取り出すまでに待つ時間を求める
+   *
+   * @param theoreticalArrival 次にリクエストが補充される理論上の時刻
+   * @param now 現在時刻
+   * @param limit 適用する上限
+   * @return long 待つ時間(ナノ秒)。取り出せる場合は0以下
+   */
+  private long waitNanos(long theoreticalArrival, long now, RateLimitConfig.Limit limit) {
+    long interval = intervalOf(limit);
+    return Math.max(theoreticalArrival - now, 0) + interval - interval * limit.getBurst();
+  }
+
+  /**
+   * リクエスト1件が補充される間隔を求める
+   *
+   * @param limit 適用する上限
+   * @return long 補充の間隔(ナノ秒)
+   */
+  private long intervalOf(RateLimitConfig.Limit limit) {
+    return (long) (TimeUnit.SECONDS.toNanos(1) / limit.getRequestsPerSecond());
+  }
+
+  /**
+   * 429のレスポンスを返す。本文はProductExceptionHandlerと同じ形式とする
+   *
+   * @param response HttpServletResponseクラス
+   * @param waitNanos 次にリクエストを受け付けられるまでの時間(ナノ秒)
+   * @throws IOException IOExceptionクラス
+   */
+  private void reject(HttpServletResponse response, long waitNanos) throws IOException {
+    // Retry-Afterは秒単位のため切り上げる
+    long second = TimeUnit.SECONDS.toNanos(1);
+    long retryAfterSeconds = (waitNanos + second - 1) / second;
+    ErrorResponse body =
+        new ErrorResponse(
+            messageSource.getMessage("error.products.ratelimit", null, Locale.JAPAN),
+            messageSource.getMessage("error.products.ratelimit.code", null, Locale.JAPAN));
+    response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+    response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    objectMapper.writeValue(response.getOutputStream(), body);
+  }
+
+  /** AuthenticationFilterが認証したクライアントごとに、APIごとの上限を適用するFilterクラス */
+  private class ClientRateLimitFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(
+        HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+      Object client = request.getAttribute(AuthenticationFilter.CLIENT_ATTRIBUTE);
+      if (!rateLimitConfig.isEnabled() || client == null) {
+        chain.doFilter(request, response);
+        return;
+      }
+      Optional<UrlPatterns> api =
+          UrlPatterns.resolve(request.getRequestURI(), request.getMethod())
+              .filter(rateLimitConfig.getApis()::containsKey);
+      String limitName = api.map(Enum::name).orElse(DEFAULT_LIMIT);
+      RateLimitConfig.Limit limit =
+          api.map(rateLimitConfig.getApis()::get).orElse(rateLimitConfig.getDefaultLimit());
+      if (tryAcquire(request, response, limitName, client.toString(), limit)) {
+        chain.doFilter(request, response);
+      }
+    }
+  }
+}
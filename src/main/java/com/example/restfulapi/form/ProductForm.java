@@ -28,4 +28,7 @@ public class ProductForm {
   int price;
 
   String imagePath;
+
+  /** 楽観ロックに用いるバージョン。指定した場合は、現在のバージョンと一致する場合のみ更新する */
+  Long version;
 }
@@ -0,0 +1,120 @@
+package com.example.restfulapi.index;
+
+import com.example.restfulapi.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Productのidと現在のimagePathの対応を保持するインデックスクラス
+ *
+ * <p>画像取得時にDBへ問い合わせることなく、画像のURLが現在の画像を指しているかを判定する
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductImageIndex {
+
+  private final ProductRepository productRepository;
+
+  private final Map<BigInteger, String> imagePaths = new ConcurrentHashMap<>();
+
+  /** 構築中にコミット後の更新・削除を受けたid。読み込んだ古い値で上書き、あるいは削除済みの値を復活させないために用いる */
+  private final Set<BigInteger> updatedWhileBuilding = ConcurrentHashMap.newKeySet();
+
+  private volatile boolean ready;
+
+  /**
+   * 起動時に画像を持つ全Productからインデックスを構築する
+   *
+   * <p>読み込んだ値の反映と構築中の更新・削除は、同じidについてはConcurrentHashMap#computeにより直列化する
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional(readOnly = true)
+  public void build() {
+    log.info("imagePathインデックスの構築を開始します");
+    try (Stream<Object[]> products = productRepository.streamIdAndImagePath()) {
+      products.forEach(product -> load((BigInteger) product[0], (String) product[1]));
+    }
+    ready = true;
+    updatedWhileBuilding.clear();
+    log.info("imagePathインデックスの構築が完了しました : {}件", imagePaths.size());
+  }
+
+  /**
+   * インデックスが参照可能な状態か判定する
+   *
+   * @return boolean 構築が完了していればtrue
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * ProductのimagePathを登録、あるいは更新する。imagePathがnullの場合は削除する
+   *
+   * @param id Productのid
+   * @param imagePath Productの現在のimagePath
+   */
+  public void put(BigInteger id, String imagePath) {
+    imagePaths.compute(
+        id,
+        (key, previous) -> {
+          markUpdatedWhileBuilding(key);
+          return imagePath;
+        });
+  }
+
+  /**
+   * Productをインデックスから削除する
+   *
+   * @param id 削除対象Productのid
+   */
+  public void remove(BigInteger id) {
+    put(id, null);
+  }
+
+  /**
+   * imagePathが該当Productの現在の画像を指しているか判定する
+   *
+   * @param id Productのid
+   * @param imagePath 判定対象のimagePath
+   * @return boolean 現在の画像を指していればtrue
+   */
+  public boolean contains(BigInteger id, String imagePath) {
+    return imagePath.equals(imagePaths.get(id));
+  }
+
+  /**
+   * 構築時に読み込んだimagePathを登録する。構築中に更新・削除されたProductは反映しない
+   *
+   * @param id Productのid
+   * @param imagePath DBから読み込んだimagePath
+   */
+  private void load(BigInteger id, String imagePath) {
+    imagePaths.compute(
+        id, (key, current) -> updatedWhileBuilding.contains(key) ? current : imagePath);
+  }
+
+  /**
+   * 構築中であれば、更新・削除を受けたidを記録する
+   *
+   * @param id 対象Productのid
+   */
+  private void markUpdatedWhileBuilding(BigInteger id) {
+    if (!ready) {
+      updatedWhileBuilding.add(id);
+    }
+  }
+}
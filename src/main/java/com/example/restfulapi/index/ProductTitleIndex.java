@@ -0,0 +1,293 @@
+package com.example.restfulapi.index;
+
+import com.example.restfulapi.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigInteger;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Productのtitleに対する文字bigramの転置インデックスクラス
+ *
+ * <p>形態素解析を行わずに日本語のtitleも部分一致検索できるよう、正規化したtitleを2文字単位に分割して索引する
+ *
+ * <p>インデックスを使えない場合のLIKE検索は、normalizeで正規化してproductsテーブルのtitle_normalized列に保存したtitleに対して、バイナリの照合順序で行う。そのためどちらで検索しても結果は同じとなる
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ProductTitleIndex {
+
+  private static final int GRAM_SIZE = 2;
+  private static final int FILL_BATCH_SIZE = 1000;
+
+  private final ProductRepository productRepository;
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Map<String, Set<BigInteger>> postings = new HashMap<>();
+  private final Map<BigInteger, String> titles = new HashMap<>();
+
+  /** 構築中にコミット後の更新・削除を受けたid。読み込んだ古い値で上書きしないために用いる */
+  private final Set<BigInteger> updatedWhileBuilding = new HashSet<>();
+
+  private volatile boolean ready;
+
+  /**
+   * title_normalized列の追加前に登録されたProductに、正規化したtitleを設定する
+   *
+   * <p>LIKE検索は未設定の行を返さないため、Webサーバーがリクエストを受け付ける前のContextRefreshedEventで実行する。設定済みの場合は1回のSELECTのみで終わる
+   */
+  @EventListener(ContextRefreshedEvent.class)
+  @Transactional
+  public void fillNormalizedTitles() {
+    PageRequest pageRequest = PageRequest.of(0, FILL_BATCH_SIZE);
+    int count = 0;
+    while (true) {
+      List<Object[]> products =
+          productRepository.findIdAndTitleByTitleNormalizedIsNull(pageRequest);
+      if (products.isEmpty()) {
+        break;
+      }
+      for (Object[] product : products) {
+        productRepository.updateTitleNormalized(
+            (BigInteger) product[0], normalize((String) product[1]));
+      }
+      count += products.size();
+    }
+    if (count > 0) {
+      log.info("正規化したtitleを設定しました : {}件", count);
+    }
+  }
+
+  /**
+   * 起動時に登録済みの全Productからインデックスを構築する
+   *
+   * <p>構築中に更新・削除されたProductは、読み込んだ値より更新後の値が新しいため、読み込んだ値を反映しない
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional(readOnly = true)
+  public void build() {
+    log.info("titleインデックスの構築を開始します");
+    try (Stream<Object[]> products = productRepository.streamIdAndTitle()) {
+      products.forEach(product -> load((BigInteger) product[0], (String) product[1]));
+    }
+    lock.writeLock().lock();
+    try {
+      ready = true;
+      updatedWhileBuilding.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+    log.info("titleインデックスの構築が完了しました : {}件", size());
+  }
+
+  /**
+   * インデックスが検索可能な状態か判定する
+   *
+   * @return boolean 構築が完了していればtrue
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * Productのtitleを登録、あるいは更新する
+   *
+   * @param id Productのid
+   * @param title Productのtitle
+   */
+  public void put(BigInteger id, String title) {
+    String normalizedTitle = normalize(title);
+    lock.writeLock().lock();
+    try {
+      markUpdatedWhileBuilding(id);
+      putToPostings(id, normalizedTitle);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Productをインデックスから削除する
+   *
+   * @param id 削除対象Productのid
+   */
+  public void remove(BigInteger id) {
+    lock.writeLock().lock();
+    try {
+      markUpdatedWhileBuilding(id);
+      removeFromPostings(id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * 構築時に読み込んだtitleを登録する。構築中に更新・削除されたProductは反映しない
+   *
+   * @param id Productのid
+   * @param title DBから読み込んだtitle
+   */
+  private void load(BigInteger id, String title) {
+    String normalizedTitle = normalize(title);
+    lock.writeLock().lock();
+    try {
+      if (!updatedWhileBuilding.contains(id)) {
+        putToPostings(id, normalizedTitle);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * 構築中であれば、更新・削除を受けたidを記録する。呼び出し元で書き込みロックを取得すること
+   *
+   * @param id 対象Productのid
+   */
+  private void markUpdatedWhileBuilding(BigInteger id) {
+    if (!ready) {
+      updatedWhileBuilding.add(id);
+    }
+  }
+
+  /**
+   * 正規化済みのtitleでposting listを更新する。呼び出し元で書き込みロックを取得すること
+   *
+   * @param id 対象Productのid
+   * @param normalizedTitle 正規化済みのtitle
+   */
+  private void putToPostings(BigInteger id, String normalizedTitle) {
+    removeFromPostings(id);
+    titles.put(id, normalizedTitle);
+    for (String gram : toGrams(normalizedTitle)) {
+      postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+    }
+  }
+
+  /**
+   * titleに入力文字を含むProductのidを取得する
+   *
+   * @param keyword 検索に用いる入力文字
+   * @return Set<BigInteger> 入力文字をtitleに含むProductのid
+   */
+  public Set<BigInteger> search(String keyword) {
+    String normalizedKeyword = normalize(keyword);
+    Set<String> grams = toGrams(normalizedKeyword);
+
+    lock.readLock().lock();
+    try {
+      // 1文字の検索語はbigramを持たないため、title全体を走査する
+      Collection<BigInteger> candidates = grams.isEmpty() ? titles.keySet() : intersect(grams);
+
+      Set<BigInteger> result = new HashSet<>();
+      for (BigInteger id : candidates) {
+        if (titles.get(id).contains(normalizedKeyword)) {
+          result.add(id);
+        }
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * インデックスに登録されているProductの件数を取得する
+   *
+   * @return int 登録件数
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return titles.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * 全てのgramを含むidを、件数の少ないposting listから順に絞り込んで取得する
+   *
+   * @param grams 検索語のgram
+   * @return Set<BigInteger> 候補となるid
+   */
+  private Set<BigInteger> intersect(Set<String> grams) {
+    List<Set<BigInteger>> postingLists = new ArrayList<>();
+    for (String gram : grams) {
+      Set<BigInteger> posting = postings.get(gram);
+      if (posting == null) {
+        return Collections.emptySet();
+      }
+      postingLists.add(posting);
+    }
+    postingLists.sort(Comparator.comparingInt(Set::size));
+
+    Set<BigInteger> candidates = new HashSet<>(postingLists.get(0));
+    for (int i = 1; i < postingLists.size() && !candidates.isEmpty(); i++) {
+      candidates.retainAll(postingLists.get(i));
+    }
+    return candidates;
+  }
+
+  /**
+   * 既存のtitleに対応するposting listからidを取り除く。呼び出し元で書き込みロックを取得すること
+   *
+   * @param id 対象Productのid
+   */
+  private void removeFromPostings(BigInteger id) {
+    String previousTitle = titles.remove(id);
+    if (previousTitle == null) {
+      return;
+    }
+    for (String gram : toGrams(previousTitle)) {
+      Set<BigInteger> posting = postings.get(gram);
+      if (posting != null) {
+        posting.remove(id);
+        if (posting.isEmpty()) {
+          postings.remove(gram);
+        }
+      }
+    }
+  }
+
+  /**
+   * 全角・半角や大文字・小文字の違いを吸収するため文字列を正規化する
+   *
+   * <p>インデックスへの登録・検索と、title_normalized列への保存・LIKE検索の入力の全てでこの規則を用いる。アクセントや末尾の空白は区別する
+   *
+   * @param text 正規化対象の文字列
+   * @return String 正規化された文字列
+   */
+  public static String normalize(String text) {
+    return Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * 正規化済みの文字列をgramに分割する
+   *
+   * @param text 正規化済みの文字列
+   * @return Set<String> 重複を除いたgram
+   */
+  private Set<String> toGrams(String text) {
+    Set<String> grams = new HashSet<>();
+    int[] codePoints = text.codePoints().toArray();
+    for (int i = 0; i + GRAM_SIZE <= codePoints.length; i++) {
+      grams.add(new String(codePoints, i, GRAM_SIZE));
+    }
+    return grams;
+  }
+}
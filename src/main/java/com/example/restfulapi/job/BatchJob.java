@@ -1,6 +1,8 @@
 package com.example.restfulapi.job;
 
+import com.example.restfulapi.service.ImageReclaimService;
 import com.example.restfulapi.service.LogService;
+import com.example.restfulapi.service.OauthService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -19,6 +21,8 @@ import java.io.IOException;
 public class BatchJob {
 
   private final LogService logService;
+  private final ImageReclaimService imageReclaimService;
+  private final OauthService oauthService;
 
   /** 毎日決められた時間に実行されるログ集計処理 */
   @Scheduled(cron = "${cron.batchCycle}", zone = "${cron.timeZone}")
@@ -33,4 +37,33 @@ public class BatchJob {
       log.info("ログの読み込みを終了します");
     }
   }
+
+  /** 定期的に実行される、有効期限の切れたアクセストークンの削除処理 */
+  @Scheduled(fixedDelayString = "${token.expiryIntervalMillis:60000}")
+  public void deleteExpiredTokens() {
+
+    try {
+      int count = oauthService.deleteExpiredTokens();
+      if (count > 0) {
+        log.info("有効期限の切れたアクセストークンを削除しました : {}件", count);
+      }
+    } catch (RuntimeException ex) {
+      log.error("アクセストークンの削除中にエラーが発生しました", ex);
+    }
+  }
+
+  /** 定期的に実行される、どのProductからも参照されていない画像の削除処理 */
+  @Scheduled(
+      fixedDelayString = "${image.reclaim.sweepIntervalMillis:3600000}",
+      initialDelayString = "${image.reclaim.sweepIntervalMillis:3600000}")
+  public void reclaimOrphanImages() {
+
+    try {
+      log.info("不要な画像の削除を開始します");
+      imageReclaimService.sweep();
+      log.info("不要な画像の削除を終了します");
+    } catch (RuntimeException | IOException ex) {
+      log.error("不要な画像の削除中にエラーが発生しました", ex);
+    }
+  }
 }
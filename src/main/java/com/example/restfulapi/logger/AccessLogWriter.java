@@ -0,0 +1,444 @@
+package com.example.restfulapi.logger;
+
+import com.example.restfulapi.config.AccessLogConfig;
+import com.example.restfulapi.constant.AccessLogPolicy;
+import com.example.restfulapi.dto.AccessLogStatsDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * APIのアクセスログを非同期にファイルへ書き込むクラス
+ *
+ * <p>リクエストのスレッドは固定長の記録を事前に確保したリングバッファに書き込むのみで、文字列の整形やファイルへの書き込みは行わない。書き込みは単一のスレッドが記録をバイトバッファへ直接エンコードし、まとめてファイルへ出力する。バッファが満杯の場合はAccessLogPolicyに従い記録を破棄、あるいは空きを待つ
+ *
+ * <p>書き込みスレッドは例外が発生しても停止せず、該当の記録を破棄して処理を続ける。スレッドが停止している場合は、設定によらず空きを待たずに記録を破棄する
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AccessLogWriter {
+
+  private static final byte TAB = '\t';
+  private static final byte NEW_LINE = '\n';
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final AccessLogConfig accessLogConfig;
+
+  private Slot[] slots;
+  private AtomicLongArray sequences;
+  private int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head;
+
+  private final LongAdder written = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  private ByteBuffer buffer;
+  /** バイトバッファにエンコード済みで、ファイルへの書き込みを待つ記録の件数 */
+  private int buffered;
+  private FileChannel channel;
+  /** 出力先のログファイルの日付 */
+  private LocalDate day;
+  /** ログファイルを開けない状態が続いているか。エラーログを1度だけ出力するために用いる */
+  private boolean openFailed;
+  private final ZoneId zone = ZoneId.systemDefault();
+  private long dayStartMillis;
+  private long nextDayStartMillis;
+  private final byte[] date = new byte[10];
+
+  private Thread writer;
+  private volatile boolean running;
+
+  /** リングバッファを確保し、書き込みスレッドを起動する */
+  @PostConstruct
+  public void start() {
+    int capacity = Integer.highestOneBit(Math.max(2, accessLogConfig.getCapacity() - 1)) << 1;
+    slots = new Slot[capacity];
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = new Slot();
+      sequences.set(i, i);
+    }
+    mask = capacity - 1;
+    buffer = ByteBuffer.allocate(accessLogConfig.getBufferBytes());
+
+    running = true;
+    writer = new Thread(this::run, "access-log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /** バッファに残った記録を書き込んでからスレッドを停止する */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(writer);
+    writer.join(TimeUnit.SECONDS.toMillis(10));
+  }
+
+  /**
+   * アクセスの記録をバッファに追加する。リクエストのスレッドから呼び出す
+   *
+   * @param method Httpメソッド
+   * @param uri リクエストのURI
+   * @param status レスポンスのステータスコード
+   * @param executionMicros 処理全体の時間(マイクロ秒)
+   * @param firstByteMicros ハンドラがレスポンスの本文を書き始めるまでの時間(マイクロ秒)
+   * @param timestamp 記録の時刻(エポックミリ秒)
+   */
+  public void append(
+      String method,
+      String uri,
+      int status,
+      long executionMicros,
+      long firstByteMicros,
+      long timestamp) {
+    long position = claim();
+    if (position < 0) {
+      dropped.increment();
+      return;
+    }
+    int index = (int) (position & mask);
+    Slot slot = slots[index];
+    slot.method = method;
+    slot.uri = uri;
+    slot.status = status;
+    slot.executionMicros = executionMicros;
+    slot.firstByteMicros = firstByteMicros;
+    slot.timestamp = timestamp;
+    // シーケンスの更新により、書き込みスレッドへ記録の内容を公開する
+    sequences.set(index, position + 1);
+  }
+
+  /**
+   * アクセスログ出力の統計情報を取得する
+   *
+   * @return AccessLogStatsDto ファイルへ書き込んだ件数、破棄した件数、書き込み待ちの件数
+   */
+  public AccessLogStatsDto getStats() {
+    return AccessLogStatsDto.builder()
+        .written(written.sum())
+        .dropped(dropped.sum())
+        .queued(Math.max(tail.get() - head, 0))
+        .build();
+  }
+
+  /**
+   * リングバッファの空きスロットを確保する
+   *
+   * @return long 確保したスロットの位置。DROPの設定、あるいは書き込みスレッドの停止後に満杯の場合は-1
+   */
+  private long claim() {
+    while (true) {
+      long position = tail.get();
+      long difference = sequences.get((int) (position & mask)) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          return position;
+        }
+      } else if (difference < 0) {
+        // 書き込みスレッドが1周前の記録を取り出していないため満杯
+        if (accessLogConfig.getPolicy() == AccessLogPolicy.DROP
+            || !running
+            || !writer.isAlive()) {
+          return -1;
+        }
+        LockSupport.parkNanos(BLOCK_PARK_NANOS);
+      }
+    }
+  }
+
+  /**
+   * 書き込みスレッドの処理。バッファが空になるたびにファイルへ出力する
+   *
+   * <p>ログファイルを開けなかった場合は、次の出力時に開き直す
+   */
+  private void run() {
+    long idleNanos = TimeUnit.MILLISECONDS.toNanos(accessLogConfig.getIdleMillis());
+    while (true) {
+      boolean stopping = !running;
+      try {
+        if (drain() > 0) {
+          continue;
+        }
+        if (channel == null && day != null) {
+          openChannel();
+        }
+        flush();
+      } catch (RuntimeException ex) {
+        log.error("アクセスログの書き込み中にエラーが発生しました", ex);
+        discardBuffer();
+      }
+      if (stopping) {
+        break;
+      }
+      LockSupport.parkNanos(idleNanos);
+    }
+    closeChannel();
+  }
+
+  /**
+   * 書き込み可能になった記録をバイトバッファへエンコードする
+   *
+   * @return int エンコードした件数
+   */
+  private int drain() {
+    int count = 0;
+    while (true) {
+      int index = (int) (head & mask);
+      if (sequences.get(index) != head + 1) {
+        return count;
+      }
+      Slot slot = slots[index];
+      try {
+        encode(slot);
+      } catch (RuntimeException ex) {
+        log.error("アクセスログの記録をエンコードできないため破棄しました : {}", slot.uri, ex);
+        dropped.increment();
+      }
+      // 文字列への参照を外し、スロットを次の周回のために解放する
+      slot.method = null;
+      slot.uri = null;
+      sequences.set(index, head + slots.length);
+      head = head + 1;
+      count++;
+    }
+  }
+
+  /**
+   * 記録を「処理時間\tメソッド\tURI\tステータス\t日付\t最初の1バイトまでの時間」の1行としてエンコードする。時間はマイクロ秒とする
+   *
+   * <p>処理時間をミリ秒で記録していた5列の形式と列の位置を変えず、列数で区別できるようにする
+   *
+   * @param slot エンコードする記録
+   */
+  private void encode(Slot slot) {
+    if (slot.timestamp < dayStartMillis || slot.timestamp >= nextDayStartMillis) {
+      flush();
+      rollOver(slot.timestamp);
+    }
+    if (channel == null) {
+      // ログファイルを開けなかった記録は書き込まれないため、破棄した件数として数える
+      dropped.increment();
+      return;
+    }
+    int length = 60 + slot.method.length() + slot.uri.length() * 3;
+    if (buffer.remaining() < length) {
+      flush();
+      if (buffer.remaining() < length) {
+        log.warn("アクセスログの1行がバッファの大きさを超えるため破棄しました : {}", slot.uri);
+        dropped.increment();
+        return;
+      }
+    }
+    int start = buffer.position();
+    try {
+      putLine(slot);
+    } catch (RuntimeException ex) {
+      // 書きかけの行を取り除き、エンコード済みの記録のみを残す
+      buffer.position(start);
+      throw ex;
+    }
+    buffered++;
+  }
+
+  /**
+   * 記録の各列をバイトバッファへ書き込む
+   *
+   * @param slot 書き込む記録
+   */
+  private void putLine(Slot slot) {
+    putNumber(slot.executionMicros);
+    buffer.put(TAB);
+    putString(slot.method);
+    buffer.put(TAB);
+    putString(slot.uri);
+    buffer.put(TAB);
+    putNumber(slot.status);
+    buffer.put(TAB);
+    buffer.put(date);
+    buffer.put(TAB);
+    putNumber(slot.firstByteMicros);
+    buffer.put(NEW_LINE);
+  }
+
+  /**
+   * 整数を10進数の文字列としてバイトバッファへ直接書き込む
+   *
+   * @param value 書き込む値
+   */
+  private void putNumber(long value) {
+    if (value < 0) {
+      buffer.put((byte) '-');
+      value = -value;
+    }
+    long divisor = 1;
+    while (value / divisor >= 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      buffer.put((byte) ('0' + value / divisor % 10));
+    }
+  }
+
+  /**
+   * 文字列をUTF-8でバイトバッファへ書き込む。ASCIIのみの場合は配列を生成しない
+   *
+   * @param value 書き込む文字列
+   */
+  private void putString(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80 || c == '\t' || c == '\n') {
+        buffer.put(value.replace('\t', ' ').replace('\n', ' ').getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+    }
+    for (int i = 0; i < value.length(); i++) {
+      buffer.put((byte) value.charAt(i));
+    }
+  }
+
+  /**
+   * 記録の日付に対応するログファイルへ出力先を切り替え、保持期間を過ぎたファイルを削除する
+   *
+   * <p>停止していた期間や日付の巻き戻りでファイルが取り残されないよう、保持期間ちょうどの日付のファイルだけでなく、ディレクトリ内の古いファイルを全て削除する
+   *
+   * @param timestamp 記録の時刻(エポックミリ秒)
+   */
+  private void rollOver(long timestamp) {
+    closeChannel();
+    day = LocalDate.ofInstant(Instant.ofEpochMilli(timestamp), zone);
+    dayStartMillis = day.atStartOfDay(zone).toInstant().toEpochMilli();
+    nextDayStartMillis = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    System.arraycopy(day.toString().getBytes(StandardCharsets.US_ASCII), 0, date, 0, date.length);
+    if (openChannel()) {
+      deleteExpiredFiles(day.minusDays(accessLogConfig.getMaxHistory()));
+    }
+  }
+
+  /**
+   * 出力先の日付のログファイルを開く。開けない状態が続く間は、最初の失敗のみエラーログを出力する
+   *
+   * @return boolean ログファイルを開けた場合はtrue
+   */
+  private boolean openChannel() {
+    try {
+      Files.createDirectories(accessLogConfig.getFile(day).getParent());
+      channel =
+          FileChannel.open(
+              accessLogConfig.getFile(day),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND);
+    } catch (IOException ex) {
+      if (!openFailed) {
+        log.error("アクセスログファイルを開けません : {}", day, ex);
+        openFailed = true;
+      }
+      return false;
+    }
+    if (openFailed) {
+      log.info("アクセスログファイルへの書き込みを再開します : {}", day);
+      openFailed = false;
+    }
+    return true;
+  }
+
+  /**
+   * 指定した日付以前のログファイルを削除する
+   *
+   * @param expiredDay 削除対象とする最も新しい日付
+   */
+  private void deleteExpiredFiles(LocalDate expiredDay) {
+    Path directory = accessLogConfig.getFile(expiredDay).getParent();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path file : stream) {
+        if (accessLogConfig.getFileDate(file).filter(day -> !day.isAfter(expiredDay)).isPresent()) {
+          Files.deleteIfExists(file);
+        }
+      }
+    } catch (IOException ex) {
+      log.warn("保持期間を過ぎたアクセスログファイルを削除できません : {}", directory, ex);
+    }
+  }
+
+  /** エンコード済みの記録をファイルへ書き込む。書き込めなかった記録は破棄した件数として数える */
+  private void flush() {
+    buffer.flip();
+    try {
+      while (channel != null && buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      if (buffer.hasRemaining()) {
+        dropped.add(buffered);
+      } else {
+        written.add(buffered);
+      }
+    } catch (IOException ex) {
+      log.error("アクセスログの書き込みに失敗しました", ex);
+      dropped.add(buffered);
+    } finally {
+      buffer.clear();
+      buffered = 0;
+    }
+  }
+
+  /** エンコード済みの記録をファイルへ書き込まずに破棄する */
+  private void discardBuffer() {
+    dropped.add(buffered);
+    buffer.clear();
+    buffered = 0;
+  }
+
+  /** 出力中のログファイルを閉じる */
+  private void closeChannel() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+    } catch (IOException ex) {
+      log.warn("アクセスログファイルを閉じられません", ex);
+    }
+    channel = null;
+  }
+
+  /** リングバッファの1件分の記録。事前に確保して再利用する */
+  private static class Slot {
+
+    private String method;
+
+    private String uri;
+
+    private int status;
+
+    private long executionMicros;
+
+    private long firstByteMicros;
+
+    private long timestamp;
+  }
+}
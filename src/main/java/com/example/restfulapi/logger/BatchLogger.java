@@ -8,11 +8,13 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ログ出力内容を定義するログクラス
  *
+ * <p>リクエストのスレッドではAccessLogWriterのバッファに記録を追加するのみで、整形とファイルへの書き込みは非同期に行う。処理時間はSystem.nanoTime()で計測し、マイクロ秒で記録する。いずれもハンドラ側の時間であり、chain.doFilterの終了後にTomcatが送出する時間やクライアントの受信の遅さは含まない
+ *
  * @author Natsume Takuya
  */
 @Slf4j
@@ -20,22 +22,28 @@ import java.time.LocalDate;
 @RequiredArgsConstructor
 public class BatchLogger implements Filter {
 
+  private final AccessLogWriter accessLogWriter;
+
   @Override
   public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
       throws IOException, ServletException {
-    long start = System.currentTimeMillis();
+    long start = System.nanoTime();
+    FirstByteResponseWrapper wrappedResponse =
+        new FirstByteResponseWrapper((HttpServletResponse) response);
 
-    chain.doFilter(request, response);
+    chain.doFilter(request, wrappedResponse);
 
-    long end = System.currentTimeMillis();
+    long end = System.nanoTime();
     HttpServletRequest httpRequest = ((HttpServletRequest) request);
-    HttpServletResponse httpResponse = ((HttpServletResponse) response);
 
     String method = httpRequest.getMethod();
     String url = httpRequest.getRequestURI();
-    int status = httpResponse.getStatus();
-    int executionTime = (int) (end - start);
+    int status = wrappedResponse.getStatus();
+    long executionMicros = TimeUnit.NANOSECONDS.toMicros(end - start);
+    long firstByteMicros =
+        TimeUnit.NANOSECONDS.toMicros(wrappedResponse.getFirstByteNanos(end) - start);
 
-    log.info("{}\t{}\t{}\t{}\t{}", executionTime, method, url, status, LocalDate.now());
+    accessLogWriter.append(
+        method, url, status, executionMicros, firstByteMicros, System.currentTimeMillis());
   }
 }
@@ -0,0 +1,160 @@
+package com.example.restfulapi.logger;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * ハンドラがレスポンスの本文を最初に書き込んだ時刻を記録するラッパークラス
+ *
+ * <p>記録するのはサーブレットのバッファへ書き込んだ時刻であり、クライアントへ送出した時刻ではない。Tomcatはバッファより小さいレスポンスをchain.doFilterの終了後にまとめて送出するため、この時刻と処理全体の時間の差はハンドラが本文を組み立てる時間を表し、クライアントへの送信の遅さは含まない。sendfileで返す画像のように本文がこのラッパーを経由しない場合は、処理全体の時間と同じになる
+ *
+ * @author Natsume Takuya
+ */
+public class FirstByteResponseWrapper extends HttpServletResponseWrapper {
+
+  private boolean written;
+  private long firstByteNanos;
+  private ServletOutputStream outputStream;
+  private PrintWriter writer;
+
+  public FirstByteResponseWrapper(HttpServletResponse response) {
+    super(response);
+  }
+
+  /**
+   * 最初の1バイトが書き込まれた時刻を取得する
+   *
+   * @param defaultNanos 本文が書き込まれていない場合の時刻
+   * @return long System.nanoTime()基準の時刻
+   */
+  public long getFirstByteNanos(long defaultNanos) {
+    return written ? firstByteNanos : defaultNanos;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (outputStream == null) {
+      outputStream = new FirstByteOutputStream(super.getOutputStream());
+    }
+    return outputStream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      writer = new FirstBytePrintWriter(super.getWriter());
+    }
+    return writer;
+  }
+
+  @Override
+  public void flushBuffer() throws IOException {
+    mark();
+    super.flushBuffer();
+  }
+
+  @Override
+  public void sendError(int sc, String msg) throws IOException {
+    mark();
+    super.sendError(sc, msg);
+  }
+
+  @Override
+  public void sendError(int sc) throws IOException {
+    mark();
+    super.sendError(sc);
+  }
+
+  @Override
+  public void sendRedirect(String location) throws IOException {
+    mark();
+    super.sendRedirect(location);
+  }
+
+  /** 最初の書き込みであれば時刻を記録する */
+  private void mark() {
+    if (!written) {
+      firstByteNanos = System.nanoTime();
+      written = true;
+    }
+  }
+
+  /** 書き込みの前に時刻を記録するServletOutputStream */
+  private class FirstByteOutputStream extends ServletOutputStream {
+
+    private final ServletOutputStream delegate;
+
+    private FirstByteOutputStream(ServletOutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      mark();
+      delegate.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      mark();
+      delegate.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      mark();
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      delegate.setWriteListener(writeListener);
+    }
+  }
+
+  /** 書き込みの前に時刻を記録するPrintWriter */
+  private class FirstBytePrintWriter extends PrintWriter {
+
+    private FirstBytePrintWriter(PrintWriter delegate) {
+      super(delegate);
+    }
+
+    @Override
+    public void write(int c) {
+      mark();
+      super.write(c);
+    }
+
+    @Override
+    public void write(char[] buf, int off, int len) {
+      mark();
+      super.write(buf, off, len);
+    }
+
+    @Override
+    public void write(String s, int off, int len) {
+      mark();
+      super.write(s, off, len);
+    }
+
+    @Override
+    public void flush() {
+      mark();
+      super.flush();
+    }
+  }
+}
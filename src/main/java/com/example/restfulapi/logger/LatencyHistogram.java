@@ -0,0 +1,202 @@
+package com.example.restfulapi.logger;
+
+import java.util.Arrays;
+
+/**
+ * APIの実行時間の分布を記録する、HDR Histogram形式の対数線形ヒストグラムクラス
+ *
+ * <p>2の累乗ごとの区間をさらにSUB_BUCKET_COUNT個に等分して数えるため、値の大きさによらず相対誤差は約3%に収まる。バケットごとの件数を足し合わせるだけでマージできるため、日ごとに保存したヒストグラムから任意の期間のパーセンタイルを求められる
+ *
+ * @author Natsume Takuya
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  private long[] counts = new long[SUB_BUCKET_COUNT];
+  private long totalCount;
+  private double totalValue;
+  private long max;
+
+  /**
+   * 値を1件記録する
+   *
+   * @param value 実行時間。負の値は0として扱う
+   */
+  public void record(long value) {
+    long normalized = Math.max(value, 0);
+    int index = indexOf(normalized);
+    if (index >= counts.length) {
+      counts = Arrays.copyOf(counts, index + 1);
+    }
+    counts[index]++;
+    totalCount++;
+    totalValue += normalized;
+    max = Math.max(max, normalized);
+  }
+
+  /**
+   * 他のヒストグラムの内容を加える
+   *
+   * @param other 加えるヒストグラム
+   * @return LatencyHistogram このヒストグラム
+   */
+  public LatencyHistogram merge(LatencyHistogram other) {
+    if (other.counts.length > counts.length) {
+      counts = Arrays.copyOf(counts, other.counts.length);
+    }
+    for (int i = 0; i < other.counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    totalValue += other.totalValue;
+    max = Math.max(max, other.max);
+    return this;
+  }
+
+  /**
+   * 記録した件数を取得する
+   *
+   * @return long 記録した件数
+   */
+  public long getTotalCount() {
+    return totalCount;
+  }
+
+  /**
+   * 記録した値の平均を取得する
+   *
+   * @return double 平均。記録がない場合は0
+   */
+  public double getMean() {
+    return totalCount == 0 ? 0 : totalValue / totalCount;
+  }
+
+  /**
+   * 記録した値の最大値を取得する
+   *
+   * @return long 最大値
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * 指定したパーセンタイルの値を取得する。バケットの上限値を返すため、実際の値以上となる
+   *
+   * @param percentile 0から100までのパーセンタイル
+   * @return long パーセンタイルの値。記録がない場合は0
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i];
+      if (cumulative >= rank) {
+        return Math.min(highestValueOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * DBに保存するため「バケット番号:件数」をカンマ区切りにした文字列に変換する。件数が0のバケットは含めない
+   *
+   * @return String 変換した文字列
+   */
+  public String encode() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] == 0) {
+        continue;
+      }
+      if (builder.length() > 0) {
+        builder.append(',');
+      }
+      builder.append(i).append(':').append(counts[i]);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * encodeで変換した文字列からヒストグラムを復元する
+   *
+   * <p>平均と最大値は文字列に含まれないため、DBに保存した値から設定する
+   *
+   * @param encoded encodeで変換した文字列
+   * @param mean 記録した値の平均
+   * @param max 記録した値の最大値
+   * @return LatencyHistogram 復元したヒストグラム
+   */
+  public static LatencyHistogram decode(String encoded, double mean, long max) {
+    LatencyHistogram histogram = new LatencyHistogram();
+    if (encoded == null || encoded.isEmpty()) {
+      return histogram;
+    }
+    for (String bucket : encoded.split(",")) {
+      int separator = bucket.indexOf(':');
+      int index = Integer.parseInt(bucket.substring(0, separator));
+      long count = Long.parseLong(bucket.substring(separator + 1));
+      if (index >= histogram.counts.length) {
+        histogram.counts = Arrays.copyOf(histogram.counts, index + 1);
+      }
+      histogram.counts[index] += count;
+      histogram.totalCount += count;
+    }
+    histogram.totalValue = mean * histogram.totalCount;
+    histogram.max = max;
+    return histogram;
+  }
+
+  /**
+   * encodeで変換した文字列からヒストグラムを復元する。最大値は最も大きい値を含むバケットの上限値とする
+   *
+   * @param encoded encodeで変換した文字列
+   * @param mean 記録した値の平均
+   * @return LatencyHistogram 復元したヒストグラム
+   */
+  public static LatencyHistogram decode(String encoded, double mean) {
+    LatencyHistogram histogram = decode(encoded, mean, 0);
+    for (int i = histogram.counts.length - 1; i >= 0; i--) {
+      if (histogram.counts[i] > 0) {
+        histogram.max = highestValueOf(i);
+        break;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * 値が属するバケット番号を求める
+   *
+   * @param value 0以上の値
+   * @return int バケット番号
+   */
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  /**
+   * バケットに属する値の上限を求める
+   *
+   * @param index バケット番号
+   * @return long バケットに属する最大の値
+   */
+  private static long highestValueOf(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long top = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+    return ((top + 1) << shift) - 1;
+  }
+}
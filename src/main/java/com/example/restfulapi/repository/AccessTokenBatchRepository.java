@@ -0,0 +1,44 @@
+package com.example.restfulapi.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * JDBCバッチによりAccessTokenの最終使用時刻をまとめて更新するRepositoryクラス
+ *
+ * @author Natsume Takuya
+ */
+@Repository
+@RequiredArgsConstructor
+public class AccessTokenBatchRepository {
+
+  private static final int BATCH_SIZE = 1000;
+  private static final String UPDATE_TIME =
+      "update access_token set update_time = ? where access_token = ? and update_time < ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * トークンごとの最終使用時刻をバッチUPDATEするメソッド。より新しい時刻が記録済みの行は更新しない
+   *
+   * @param updateTimes トークンとその最終使用時刻
+   */
+  public void updateAll(Map<String, LocalDateTime> updateTimes) {
+    jdbcTemplate.batchUpdate(
+        UPDATE_TIME,
+        new ArrayList<>(updateTimes.entrySet()),
+        BATCH_SIZE,
+        (preparedStatement, entry) -> {
+          Timestamp updateTime = Timestamp.valueOf(entry.getValue());
+          preparedStatement.setTimestamp(1, updateTime);
+          preparedStatement.setString(2, entry.getKey());
+          preparedStatement.setTimestamp(3, updateTime);
+        });
+  }
+}
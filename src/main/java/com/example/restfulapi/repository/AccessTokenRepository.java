@@ -2,9 +2,13 @@ package com.example.restfulapi.repository;
 
 import com.example.restfulapi.entity.AccessToken;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigInteger;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 /**
@@ -16,4 +20,29 @@ import java.util.Optional;
 public interface AccessTokenRepository extends JpaRepository<AccessToken, BigInteger> {
 
   Optional<AccessToken> findByAccessToken(String accessToken);
+
+  /**
+   * 指定した時刻以降に使用されたトークンが存在するか判定するメソッド
+   *
+   * @param accessToken 判定対象のトークン
+   * @param borderLine 有効期限の境界となる時刻
+   * @return boolean 有効なトークンが存在すればtrue
+   */
+  boolean existsByAccessTokenAndUpdateTimeAfter(String accessToken, LocalDateTime borderLine);
+
+  /**
+   * 指定した時刻より前に最後に使用されたトークンを、update_timeのインデックスを用いて指定件数まで削除するメソッド
+   *
+   * <p>ロックの保持時間を短くするため、呼び出しごとに独立したトランザクションで実行する
+   *
+   * @param borderLine 有効期限の境界となる時刻
+   * @param limit 1回で削除する件数の上限
+   * @return int 削除件数
+   */
+  @Transactional
+  @Modifying
+  @Query(
+      value = "DELETE FROM access_token WHERE update_time < ?1 ORDER BY update_time LIMIT ?2",
+      nativeQuery = true)
+  int deleteByUpdateTimeBefore(LocalDateTime borderLine, int limit);
 }
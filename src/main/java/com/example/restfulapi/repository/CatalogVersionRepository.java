@@ -0,0 +1,41 @@
+package com.example.restfulapi.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Product一覧のETagに用いるカタログ全体のバージョンを管理するRepositoryクラス
+ *
+ * <p>バージョンはcatalog_versionテーブルの1行のみで保持し、Productの登録・更新・削除のたびに増やす。一覧の取得ごとにproductsテーブル全体を集計しないために用いる
+ *
+ * @author Natsume Takuya
+ */
+@Repository
+@RequiredArgsConstructor
+public class CatalogVersionRepository {
+
+  private static final String SELECT_VERSION = "select version from catalog_version where id = 1";
+  private static final String INCREMENT_VERSION =
+      "insert into catalog_version (id, version) values (1, 1)"
+          + " on duplicate key update version = version + 1";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * 現在のカタログのバージョンを取得するメソッド
+   *
+   * @return long カタログのバージョン。一度も変更されていない場合は0
+   */
+  public long find() {
+    List<Long> versions = jdbcTemplate.queryForList(SELECT_VERSION, Long.class);
+    return versions.isEmpty() ? 0 : versions.get(0);
+  }
+
+  /** カタログのバージョンを1増やすメソッド */
+  public void increment() {
+    jdbcTemplate.update(INCREMENT_VERSION);
+  }
+}
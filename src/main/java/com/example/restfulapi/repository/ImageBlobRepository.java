@@ -0,0 +1,80 @@
+package com.example.restfulapi.repository;
+
+import com.example.restfulapi.entity.ImageBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repositoryクラス
+ *
+ * @author Natsume Takuya
+ */
+@Repository
+public interface ImageBlobRepository extends JpaRepository<ImageBlob, String> {
+
+  /**
+   * 画像実体を登録し、すでに登録されている場合は参照数を1増やすメソッド
+   *
+   * <p>1文で行うため、同一の画像が同時にアップロードされても参照数が失われない
+   *
+   * @param hash 画像のSHA-256
+   * @param size 画像のバイト数
+   * @return int 更新件数
+   */
+  @Modifying
+  @Query(
+      value =
+          "INSERT INTO image_blob (hash, size, ref_count) VALUES (?1, ?2, 1) "
+              + "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1",
+      nativeQuery = true)
+  int acquire(String hash, long size);
+
+  /**
+   * 登録済みの画像実体の参照数を1増やすメソッド
+   *
+   * @param hash 画像のSHA-256
+   * @return int 更新件数。画像実体が存在しない場合は0
+   */
+  @Modifying
+  @Query("UPDATE ImageBlob b SET b.refCount = b.refCount + 1 WHERE b.hash = ?1")
+  int retain(String hash);
+
+  /**
+   * 画像実体の参照数を1減らすメソッド
+   *
+   * @param hash 画像のSHA-256
+   * @return int 更新件数
+   */
+  @Modifying
+  @Query("UPDATE ImageBlob b SET b.refCount = b.refCount - 1 WHERE b.hash = ?1 AND b.refCount > 0")
+  int release(String hash);
+
+  /**
+   * 行ロックを取得して画像実体を取得するメソッド
+   *
+   * <p>未コミットの登録がある場合はコミットまで待ち、存在しないhashにもギャップロックを取得する。ロックを保持したまま実体を削除することで、削除と同時に行われる同一画像の登録が、削除される実体を保存済みと判断することを防ぐ
+   *
+   * @param hashes 画像のSHA-256
+   * @return List<ImageBlob> 登録されている画像実体
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT b FROM ImageBlob b WHERE b.hash IN ?1")
+  List<ImageBlob> findAllByHashInForUpdate(Collection<String> hashes);
+
+  /**
+   * 参照されていない画像実体を削除するメソッド
+   *
+   * @param hash 画像のSHA-256
+   * @return int 削除件数。参照が残っている場合は0
+   */
+  @Modifying
+  @Query("DELETE FROM ImageBlob b WHERE b.hash = ?1 AND b.refCount = 0")
+  int deleteIfUnreferenced(String hash);
+}
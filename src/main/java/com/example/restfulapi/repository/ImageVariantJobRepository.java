@@ -0,0 +1,80 @@
+package com.example.restfulapi.repository;
+
+import com.example.restfulapi.constant.ImageVariantJobStatus;
+import com.example.restfulapi.entity.ImageVariantJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repositoryクラス
+ *
+ * @author Natsume Takuya
+ */
+@Repository
+public interface ImageVariantJobRepository extends JpaRepository<ImageVariantJob, BigInteger> {
+
+  /**
+   * 指定した状態のジョブを登録順に取得するメソッド
+   *
+   * @param status ジョブの状態
+   * @param pageable 取得件数
+   * @return List<ImageVariantJob> 該当ジョブ
+   */
+  List<ImageVariantJob> findByStatusOrderById(ImageVariantJobStatus status, Pageable pageable);
+
+  /**
+   * ジョブの状態が想定どおりの場合のみ状態と更新日時を更新するメソッド。ジョブの取得を1つのワーカーに限定するために用いる
+   *
+   * @param id ジョブのid
+   * @param status 更新後の状態
+   * @param expected 更新前の状態
+   * @param updateTime 更新日時
+   * @return int 更新件数
+   */
+  @Transactional
+  @Modifying
+  @Query(
+      "UPDATE ImageVariantJob j SET j.status = ?2, j.updateTime = ?4"
+          + " WHERE j.id = ?1 AND j.status = ?3")
+  int updateStatus(
+      BigInteger id,
+      ImageVariantJobStatus status,
+      ImageVariantJobStatus expected,
+      LocalDateTime updateTime);
+
+  /**
+   * 失敗したジョブの試行回数を1増やし、状態を更新するメソッド
+   *
+   * @param id ジョブのid
+   * @param status 更新後の状態
+   * @return int 更新件数
+   */
+  @Transactional
+  @Modifying
+  @Query("UPDATE ImageVariantJob j SET j.status = ?2, j.attempts = j.attempts + 1 WHERE j.id = ?1")
+  int updateStatusAndIncrementAttempts(BigInteger id, ImageVariantJobStatus status);
+
+  /**
+   * 指定した状態のまま指定日時より前から更新されていないジョブの状態を更新するメソッド
+   *
+   * @param status 更新後の状態
+   * @param expected 更新前の状態
+   * @param updatedBefore この日時より前に更新されたジョブを対象とする
+   * @return int 更新件数
+   */
+  @Transactional
+  @Modifying
+  @Query(
+      "UPDATE ImageVariantJob j SET j.status = ?1"
+          + " WHERE j.status = ?2 AND j.updateTime < ?3")
+  int updateAllStatusUpdatedBefore(
+      ImageVariantJobStatus status, ImageVariantJobStatus expected, LocalDateTime updatedBefore);
+}
@@ -2,7 +2,6 @@ package com.example.restfulapi.repository;
 
 import com.example.restfulapi.entity.LogContents;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigInteger;
@@ -19,7 +18,14 @@ public interface LogContentsRepository extends JpaRepository<LogContents, BigInt
 
   List<LogContents> findByFileName(String fileName);
 
-  @Query(
-      "SELECT apiName,httpMethod,httpStatusCode,SUM(accessCount) ,AVG(executionTime) FROM LogContents WHERE date BETWEEN ?1 AND ?2 GROUP BY apiName,httpMethod,httpStatusCode")
-  List<String> findByDateAndReCalculate(LocalDate startDate, LocalDate endDate);
+  /**
+   * 指定した期間に集計された日ごとのログを取得するメソッド。パーセンタイルは平均と異なりSQLで再集計できないため、ヒストグラムをJava側でマージする
+   *
+   * @param startDate 検索の開始日
+   * @param endDate 検索の終了日
+   * @return List<LogContents> 日ごとのログのリスト
+   */
+  List<LogContents> findByDateBetween(LocalDate startDate, LocalDate endDate);
+
+  boolean existsByDateBetween(LocalDate startDate, LocalDate endDate);
 }
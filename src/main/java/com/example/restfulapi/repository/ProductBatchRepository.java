@@ -0,0 +1,50 @@
+package com.example.restfulapi.repository;
+
+import com.example.restfulapi.form.ProductForm;
+import com.example.restfulapi.index.ProductTitleIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * JDBCバッチによりProductをまとめて書き込むRepositoryクラス
+ *
+ * <p>ProductのidはIDENTITY採番のためHibernateではINSERTがバッチ化されない。そのためJdbcTemplateで直接バッチ実行する
+ *
+ * @author Natsume Takuya
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductBatchRepository {
+
+  private static final int BATCH_SIZE = 1000;
+  private static final String INSERT_PRODUCT =
+      "insert into products (title, title_normalized, description, price, image_path)"
+          + " values (?, ?, ?, ?, ?)"
+          + " on duplicate key update id = id";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * ProductFormの内容をバッチINSERTするメソッド
+   *
+   * <p>titleがユニークキーと重複する行はエラーとせずに読み飛ばし、バッチ全体を失敗させない。INSERT IGNOREと異なり、重複以外のエラーは警告に変換しない
+   *
+   * @param productForms 登録対象のProductForm
+   */
+  public void insertAllIgnoringDuplicates(List<ProductForm> productForms) {
+    jdbcTemplate.batchUpdate(
+        INSERT_PRODUCT,
+        productForms,
+        BATCH_SIZE,
+        (preparedStatement, productForm) -> {
+          preparedStatement.setString(1, productForm.getTitle());
+          preparedStatement.setString(2, ProductTitleIndex.normalize(productForm.getTitle()));
+          preparedStatement.setString(3, productForm.getDescription());
+          preparedStatement.setInt(4, productForm.getPrice());
+          preparedStatement.setString(5, productForm.getImagePath());
+        });
+  }
+}
@@ -1,12 +1,26 @@
 package com.example.restfulapi.repository;
 
 import com.example.restfulapi.entity.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
 import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * Repositoryクラス
@@ -24,12 +38,12 @@ public interface ProductRepository extends JpaRepository<Product, BigInteger> {
   List<Product> findAllByOrderByUpdateTime();
 
   /**
-   * Title部分一致でProductを更新日順に取得するメソッド
+   * 正規化したtitleの部分一致でProductを更新日順に取得するメソッド
    *
-   * @param title 検索に用いる入力title
+   * @param normalizedTitle ProductTitleIndex.normalizeで正規化した入力title
    * @return List<Product> 検索にかかったProductのリスト
    */
-  List<Product> findByTitleContainingOrderByUpdateTime(String title);
+  List<Product> findByTitleNormalizedContainingOrderByUpdateTime(String normalizedTitle);
 
   /**
    * titleでProductを取得するメソッド
@@ -38,4 +52,222 @@ public interface ProductRepository extends JpaRepository<Product, BigInteger> {
    * @return Optional<Product> 該当titleのProduct
    */
   Optional<Product> findByTitle(String title);
+
+  /**
+   * (update_time, id)順で先頭ページのProductを取得するメソッド
+   *
+   * @param pageable 取得件数を指定するPageable
+   * @return List<Product> 先頭ページのProductのリスト
+   */
+  @Query("SELECT p FROM Product p ORDER BY p.updateTime, p.id")
+  List<Product> findFirstPage(Pageable pageable);
+
+  /**
+   * カーソルの(update_time, id)より後ろにあるProductを取得するメソッド
+   *
+   * @param updateTime カーソルが指すProductのupdateTime
+   * @param id カーソルが指すProductのid
+   * @param pageable 取得件数を指定するPageable
+   * @return List<Product> 次ページのProductのリスト
+   */
+  @Query(
+      "SELECT p FROM Product p WHERE p.updateTime > ?1 OR (p.updateTime = ?1 AND p.id > ?2) ORDER BY p.updateTime, p.id")
+  List<Product> findNextPage(LocalDateTime updateTime, BigInteger id, Pageable pageable);
+
+  /**
+   * 正規化したtitleの部分一致で先頭ページのProductを取得するメソッド
+   *
+   * @param normalizedTitle ProductTitleIndex.normalizeで正規化した入力title
+   * @param pageable 取得件数を指定するPageable
+   * @return List<Product> 先頭ページのProductのリスト
+   */
+  @Query(
+      "SELECT p FROM Product p WHERE p.titleNormalized LIKE %?#{escape([0])}% ESCAPE ?#{escapeCharacter()} ORDER BY p.updateTime, p.id")
+  List<Product> findFirstPageByTitleNormalizedContaining(String normalizedTitle, Pageable pageable);
+
+  /**
+   * 正規化したtitleの部分一致でカーソルより後ろにあるProductを取得するメソッド
+   *
+   * @param normalizedTitle ProductTitleIndex.normalizeで正規化した入力title
+   * @param updateTime カーソルが指すProductのupdateTime
+   * @param id カーソルが指すProductのid
+   * @param pageable 取得件数を指定するPageable
+   * @return List<Product> 次ページのProductのリスト
+   */
+  @Query(
+      "SELECT p FROM Product p WHERE p.titleNormalized LIKE %?#{escape([0])}% ESCAPE ?#{escapeCharacter()} AND (p.updateTime > ?2 OR (p.updateTime = ?2 AND p.id > ?3)) ORDER BY p.updateTime, p.id")
+  List<Product> findNextPageByTitleNormalizedContaining(
+      String normalizedTitle, LocalDateTime updateTime, BigInteger id, Pageable pageable);
+
+  /**
+   * 登録されているProductを更新日順に逐次読み込むメソッド
+   *
+   * <p>MySQLドライバで行単位のストリーミングを有効にするため、fetch sizeにInteger.MIN_VALUEを指定する。
+   * 呼び出し元はトランザクション内で消費し、消費後にStreamをcloseすること
+   *
+   * @return Stream<Product> 登録されているProductのStream
+   */
+  @QueryHints({
+    @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+    @QueryHint(name = HINT_CACHEABLE, value = "false"),
+    @QueryHint(name = HINT_READONLY, value = "true")
+  })
+  @Query("SELECT p FROM Product p ORDER BY p.updateTime, p.id")
+  Stream<Product> streamAllByOrderByUpdateTime();
+
+  /**
+   * 正規化したtitleの部分一致でProductを更新日順に逐次読み込むメソッド
+   *
+   * @param normalizedTitle ProductTitleIndex.normalizeで正規化した入力title
+   * @return Stream<Product> 検索にかかったProductのStream
+   */
+  @QueryHints({
+    @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+    @QueryHint(name = HINT_CACHEABLE, value = "false"),
+    @QueryHint(name = HINT_READONLY, value = "true")
+  })
+  @Query(
+      "SELECT p FROM Product p WHERE p.titleNormalized LIKE %?#{escape([0])}% ESCAPE ?#{escapeCharacter()} ORDER BY p.updateTime, p.id")
+  Stream<Product> streamByTitleNormalizedContainingOrderByUpdateTime(String normalizedTitle);
+
+  /**
+   * 指定したidのProductを更新日順に逐次読み込むメソッド
+   *
+   * @param ids 取得対象Productのid
+   * @return Stream<Product> 該当ProductのStream
+   */
+  @QueryHints({
+    @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+    @QueryHint(name = HINT_CACHEABLE, value = "false"),
+    @QueryHint(name = HINT_READONLY, value = "true")
+  })
+  @Query("SELECT p FROM Product p WHERE p.id IN ?1 ORDER BY p.updateTime, p.id")
+  Stream<Product> streamByIdInOrderByUpdateTime(Collection<BigInteger> ids);
+
+  /**
+   * titleインデックス構築のため、全Productのidとtitleを逐次読み込むメソッド
+   *
+   * @return Stream<Object[]> [id, title]のStream
+   */
+  @QueryHints({
+    @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+    @QueryHint(name = HINT_READONLY, value = "true")
+  })
+  @Query("SELECT p.id, p.title FROM Product p")
+  Stream<Object[]> streamIdAndTitle();
+
+  /**
+   * title_normalized列が未設定のProductのidとtitleを取得するメソッド
+   *
+   * @param pageable 取得件数を指定するPageable
+   * @return List<Object[]> [id, title]のリスト
+   */
+  @Query("SELECT p.id, p.title FROM Product p WHERE p.titleNormalized IS NULL")
+  List<Object[]> findIdAndTitleByTitleNormalizedIsNull(Pageable pageable);
+
+  /**
+   * Productのtitle_normalized列を設定するメソッド。更新日時とversionは変更しない
+   *
+   * @param id 対象Productのid
+   * @param titleNormalized 正規化したtitle
+   * @return int 更新された件数
+   */
+  @Modifying
+  @Query(
+      "UPDATE Product p SET p.titleNormalized = ?2, p.updateTime = p.updateTime WHERE p.id = ?1")
+  int updateTitleNormalized(BigInteger id, String titleNormalized);
+
+  /**
+   * 行ロックを取得してProductを取得するメソッド。imagePathの変更前の値を確定させ、画像実体の参照数を正しく増減させるために用いる
+   *
+   * @param id Productのid
+   * @return Optional<Product> 該当Product
+   */
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT p FROM Product p WHERE p.id = ?1")
+  Optional<Product> findByIdForUpdate(BigInteger id);
+
+  /**
+   * 指定したidのProductのidとimagePathを取得するメソッド。画像ディレクトリとの照合に用いる
+   *
+   * @param ids 取得対象Productのid
+   * @return List<Object[]> [id, imagePath]のリスト
+   */
+  @Query("SELECT p.id, p.imagePath FROM Product p WHERE p.id IN ?1")
+  List<Object[]> findIdAndImagePathByIdIn(Collection<BigInteger> ids);
+
+  /**
+   * imagePathインデックス構築のため、画像を持つ全ProductのidとimagePathを逐次読み込むメソッド
+   *
+   * @return Stream<Object[]> [id, imagePath]のStream
+   */
+  @QueryHints({
+    @QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+    @QueryHint(name = HINT_READONLY, value = "true")
+  })
+  @Query("SELECT p.id, p.imagePath FROM Product p WHERE p.imagePath IS NOT NULL")
+  Stream<Object[]> streamIdAndImagePath();
+
+  /**
+   * 指定したidのProductを更新日順に取得するメソッド
+   *
+   * @param ids 取得対象Productのid
+   * @return List<Product> 該当Productのリスト
+   */
+  @Query("SELECT p FROM Product p WHERE p.id IN ?1 ORDER BY p.updateTime, p.id")
+  List<Product> findByIdInOrderByUpdateTime(Collection<BigInteger> ids);
+
+  /**
+   * 指定したidのうち先頭ページのProductを取得するメソッド
+   *
+   * @param ids 取得対象Productのid
+   * @param pageable 取得件数を指定するPageable
+   * @return List<Product> 先頭ページのProductのリスト
+   */
+  @Query("SELECT p FROM Product p WHERE p.id IN ?1 ORDER BY p.updateTime, p.id")
+  List<Product> findFirstPageByIdIn(Collection<BigInteger> ids, Pageable pageable);
+
+  /**
+   * 指定したidのうちカーソルより後ろにあるProductを取得するメソッド
+   *
+   * @param ids 取得対象Productのid
+   * @param updateTime カーソルが指すProductのupdateTime
+   * @param id カーソルが指すProductのid
+   * @param pageable 取得件数を指定するPageable
+   * @return List<Product> 次ページのProductのリスト
+   */
+  @Query(
+      "SELECT p FROM Product p WHERE p.id IN ?1 AND (p.updateTime > ?2 OR (p.updateTime = ?2 AND p.id > ?3)) ORDER BY p.updateTime, p.id")
+  List<Product> findNextPageByIdIn(
+      Collection<BigInteger> ids, LocalDateTime updateTime, BigInteger id, Pageable pageable);
+
+  /**
+   * DBの照合順序で指定したtitleと一致する、登録済みProductのidを取得するメソッド
+   *
+   * @param titles 検索に用いるtitle
+   * @return List<BigInteger> 登録済みProductのid
+   */
+  @Query("SELECT p.id FROM Product p WHERE p.title IN ?1")
+  List<BigInteger> findIdByTitleIn(Collection<String> titles);
+
+  /**
+   * titleでProductをまとめて取得するメソッド
+   *
+   * @param titles 取得対象Productのtitle
+   * @return List<Product> 該当Productのリスト
+   */
+  List<Product> findByTitleIn(Collection<String> titles);
+
+  /**
+   * ProductのimagePathを1回のUPDATEで更新するメソッド
+   *
+   * @param id 更新対象Productのid
+   * @param imagePath 更新後のimagePath
+   * @param updateTime 更新日時
+   * @return int 更新された件数
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query(
+      "UPDATE Product p SET p.imagePath = ?2, p.updateTime = ?3, p.version = p.version + 1 WHERE p.id = ?1")
+  int updateImagePath(BigInteger id, String imagePath, LocalDateTime updateTime);
 }
@@ -0,0 +1,116 @@
+package com.example.restfulapi.repository;
+
+import com.example.restfulapi.entity.Product;
+import com.example.restfulapi.index.ProductTitleIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.OptionalLong;
+
+/**
+ * Productを1回のUPDATEで更新し、更新後のversionを読み戻さずに取得するRepositoryクラス
+ *
+ * <p>versionをLAST_INSERT_ID(version + 1)で更新すると、MySQLはその値をOKパケットのlast insert idとして返す。JDBCドライバはこれを生成キーとして公開するため、SELECTを発行せずに更新後のversionが分かる
+ *
+ * @author Natsume Takuya
+ */
+@Repository
+@RequiredArgsConstructor
+public class ProductUpdateRepository {
+
+  private static final String UPDATE =
+      "update products set title = ?, title_normalized = ?, description = ?, price = ?,"
+          + " update_time = ?, version = last_insert_id(version + 1)"
+          + " where id = ? and (? is null or version = ?)";
+  private static final String SELECT_UNCHANGED_COLUMNS =
+      "select image_path, create_time from products where id = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * Productのtitle、description、priceを更新するメソッド
+   *
+   * <p>imagePathは画像のアップロード・更新APIでのみ変更するため、ここでは更新しない
+   *
+   * @param id 更新対象Productのid
+   * @param title 更新後のtitle
+   * @param description 更新後のdescription
+   * @param price 更新後のprice
+   * @param updateTime 更新日時
+   * @param version 楽観ロックに用いるversion。nullの場合は確認しない
+   * @return OptionalLong 更新後のversion。存在しない、あるいはversionが一致しない場合はempty
+   */
+  public OptionalLong update(
+      BigInteger id,
+      String title,
+      String description,
+      int price,
+      LocalDateTime updateTime,
+      Long version) {
+    return update(
+        UPDATE,
+        title,
+        ProductTitleIndex.normalize(title),
+        description,
+        price,
+        Timestamp.valueOf(updateTime),
+        id,
+        version,
+        version);
+  }
+
+  /**
+   * updateで変更しないimagePathとcreateTimeを取得するメソッド
+   *
+   * <p>updateと同じトランザクション内で呼び出すため、UPDATEで取得した行ロックにより他の更新と競合しない
+   *
+   * @param id 対象Productのid
+   * @return Product idとimagePath、createTimeのみを保持するProduct
+   */
+  public Product findUnchangedColumns(BigInteger id) {
+    return jdbcTemplate.queryForObject(
+        SELECT_UNCHANGED_COLUMNS,
+        (resultSet, rowNum) -> {
+          Product product = new Product();
+          product.setId(id);
+          product.setImagePath(resultSet.getString("image_path"));
+          product.setCreateTime(resultSet.getTimestamp("create_time").toLocalDateTime());
+          return product;
+        },
+        id);
+  }
+
+  /**
+   * UPDATEを実行し、更新件数が1件であれば生成キーとして返された更新後のversionを取得する
+   *
+   * @param sql 実行するUPDATE文
+   * @param parameters UPDATE文のパラメータ
+   * @return OptionalLong 更新後のversion。更新されなかった場合はempty
+   */
+  private OptionalLong update(String sql, Object... parameters) {
+    KeyHolder keyHolder = new GeneratedKeyHolder();
+    int updatedCount =
+        jdbcTemplate.update(
+            connection -> {
+              PreparedStatement preparedStatement =
+                  connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+              for (int i = 0; i < parameters.length; i++) {
+                preparedStatement.setObject(i + 1, parameters[i]);
+              }
+              return preparedStatement;
+            },
+            keyHolder);
+    if (updatedCount != 1 || keyHolder.getKey() == null) {
+      return OptionalLong.empty();
+    }
+    return OptionalLong.of(keyHolder.getKey().longValue());
+  }
+}
@@ -0,0 +1,70 @@
+package com.example.restfulapi.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * signed方式で失効させたトークンを全てのAPIノードで共有するRepositoryクラス
+ *
+ * <p>各ノードは自動採番のidにより前回以降に追加された失効のみを取得する。同時に登録された行はidの順にコミットされるとは限らないため、呼び出し元は取得済みのidより少し前から取得し直す
+ *
+ * @author Natsume Takuya
+ */
+@Repository
+@RequiredArgsConstructor
+public class RevokedTokenRepository {
+
+  private static final String INSERT =
+      "insert ignore into revoked_token (token_id, expire_time) values (?, ?)";
+  private static final String SELECT_AFTER =
+      "select id, token_id, expire_time from revoked_token"
+          + " where id > ? and expire_time > ? order by id limit ?";
+  private static final String DELETE_EXPIRED =
+      "delete from revoked_token where expire_time <= ? limit ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  /**
+   * 失効させたトークンを登録するメソッド。登録済みの場合は何もしない
+   *
+   * @param tokenId 失効させたトークンのid
+   * @param expiresAt トークンの有効期限(epoch秒)
+   */
+  public void insert(String tokenId, long expiresAt) {
+    jdbcTemplate.update(INSERT, tokenId, expiresAt);
+  }
+
+  /**
+   * 指定したidより後に登録された、有効期限内の失効トークンをid順に取得するメソッド
+   *
+   * @param id 取得済みの最後のid
+   * @param now 現在時刻(epoch秒)
+   * @param limit 取得件数
+   * @return List<Object[]> [id, トークンid, 有効期限]のリスト
+   */
+  public List<Object[]> findAfter(long id, long now, int limit) {
+    return jdbcTemplate.query(
+        SELECT_AFTER,
+        (resultSet, rowNum) ->
+            new Object[] {
+              resultSet.getLong(1), resultSet.getString(2), resultSet.getLong(3)
+            },
+        id,
+        now,
+        limit);
+  }
+
+  /**
+   * 有効期限の切れた失効トークンを削除するメソッド
+   *
+   * @param now 現在時刻(epoch秒)
+   * @param limit 1回で削除する最大件数
+   * @return int 削除件数
+   */
+  public int deleteExpired(long now, int limit) {
+    return jdbcTemplate.update(DELETE_EXPIRED, now, limit);
+  }
+}
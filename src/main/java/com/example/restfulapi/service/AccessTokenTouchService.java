@@ -0,0 +1,67 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.repository.AccessTokenBatchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AccessTokenの使用をメモリ上に記録し、定期的にまとめてDBへ書き込むServiceクラス
+ *
+ * <p>トークン1件につき最新の使用時刻のみを保持するため、同じトークンでの複数回のリクエストは1件の更新にまとめられる。DB上の最終使用時刻は書き込み間隔の分だけ遅れる
+ *
+ * @author Natsume Takuya
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AccessTokenTouchService {
+
+  private final AccessTokenBatchRepository accessTokenBatchRepository;
+
+  private final Map<String, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+  /**
+   * トークンが使用されたことを記録する
+   *
+   * @param token 使用されたトークン
+   */
+  public void touch(String token) {
+    pending.put(token, LocalDateTime.now());
+  }
+
+  /** 記録された使用時刻をまとめてDBへ書き込む */
+  @Scheduled(fixedDelayString = "${token.touchFlushIntervalMillis:10000}")
+  public void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    Map<String, LocalDateTime> updateTimes = new HashMap<>();
+    for (Map.Entry<String, LocalDateTime> entry : pending.entrySet()) {
+      // 取り出しまでの間に再度使用された場合は、次回の書き込みに残す
+      if (pending.remove(entry.getKey(), entry.getValue())) {
+        updateTimes.put(entry.getKey(), entry.getValue());
+      }
+    }
+    try {
+      accessTokenBatchRepository.updateAll(updateTimes);
+    } catch (RuntimeException ex) {
+      // 書き込めなかった使用時刻は、より新しい記録がなければ次回に再度書き込む
+      updateTimes.forEach(pending::putIfAbsent);
+      log.warn("トークンの使用時刻の書き込みに失敗しました : {}件", updateTimes.size(), ex);
+    }
+  }
+
+  /** 停止前に記録済みの使用時刻を書き込む */
+  @PreDestroy
+  public void stop() {
+    flush();
+  }
+}
@@ -0,0 +1,222 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.config.ImageStorageConfig;
+import com.example.restfulapi.config.PathConfig;
+import com.example.restfulapi.constant.AcceptedSuffixes;
+import com.example.restfulapi.exception.BadRequestException;
+import com.example.restfulapi.exception.PayloadTooLargeException;
+import com.example.restfulapi.exception.UnsupportedMediaException;
+import com.example.restfulapi.repository.ImageBlobRepository;
+import com.example.restfulapi.storage.ImageStorage;
+import com.example.restfulapi.storage.UploadedImage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.MessageSource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 画像の実体を内容のSHA-256をキーとして保存するServiceクラス
+ *
+ * <p>同一内容の画像は1つの実体を共有し、実体を参照するProductの数をimage_blobテーブルで管理する。実体の保存先はImageStorageの実装による
+ *
+ * @author Natsume Takuya
+ */
+@Service
+@Transactional
+@RequiredArgsConstructor
+@Slf4j
+public class ImageBlobService {
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+  private static final Pattern IMAGE_PATH_PATTERN =
+      Pattern.compile("^/api/products/[0-9]+/images/([0-9a-f]{64})\\.[a-z]+$");
+
+  private final ImageBlobRepository imageBlobRepository;
+  private final ImageStorage imageStorage;
+  private final ImageVariantService imageVariantService;
+  private final ImageReclaimService imageReclaimService;
+  private final ImageStorageConfig imageStorageConfig;
+  private final PathConfig pathConfig;
+  private final MessageSource messageSource;
+
+  /**
+   * アップロードされた画像を逐次読み込み、SHA-256を計算しながら一時ファイルへ書き込むメソッド
+   *
+   * <p>画像の形式はContent-Typeではなく先頭バイトのシグネチャで判定する。形式が不正な場合は本文を読み進めず、上限を超えた場合はその時点で中断するため、不正なアップロードがメモリやディスクを消費しない。受信には時間がかかるため、トランザクションの外で行う
+   *
+   * @param inputStream アップロードされた画像の入力ストリーム
+   * @param contentLength リクエストで宣言されたバイト数。不明な場合は-1
+   * @return UploadedImage 一時ファイルに書き込まれた画像
+   * @throws IOException 読み込み、あるいは書き込み時の例外を投げるIOExceptionクラス
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public UploadedImage receive(InputStream inputStream, long contentLength) throws IOException {
+    long maxBytes = imageStorageConfig.getUploadMaxBytes();
+    if (contentLength > maxBytes) {
+      throw new PayloadTooLargeException(
+          messageSource.getMessage("error.products.image.size", null, Locale.JAPAN));
+    }
+
+    byte[] head = new byte[AcceptedSuffixes.SIGNATURE_LENGTH];
+    int headLength = inputStream.readNBytes(head, 0, head.length);
+    if (headLength == 0) {
+      throw new BadRequestException(
+          messageSource.getMessage("error.products.image.empty", null, Locale.JAPAN));
+    }
+    AcceptedSuffixes suffix =
+        AcceptedSuffixes.detect(head, headLength)
+            .orElseThrow(
+                () ->
+                    new UnsupportedMediaException(
+                        messageSource.getMessage(
+                            "error.products.image.suffix", null, Locale.JAPAN)));
+
+    MessageDigest digest = createDigest();
+    Path temporaryDirectory = pathConfig.getTemporaryDirectory();
+    Files.createDirectories(temporaryDirectory);
+    Path file = Files.createTempFile(temporaryDirectory, "upload", ".tmp");
+    long size = headLength;
+    try (OutputStream outputStream = Files.newOutputStream(file)) {
+      digest.update(head, 0, headLength);
+      outputStream.write(head, 0, headLength);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int count;
+      while ((count = inputStream.read(buffer)) != -1) {
+        size += count;
+        if (size > maxBytes) {
+          throw new PayloadTooLargeException(
+              messageSource.getMessage("error.products.image.size", null, Locale.JAPAN));
+        }
+        digest.update(buffer, 0, count);
+        outputStream.write(buffer, 0, count);
+      }
+    } catch (RuntimeException | IOException ex) {
+      Files.deleteIfExists(file);
+      throw ex;
+    }
+    return new UploadedImage(
+        String.format("%064x", new BigInteger(1, digest.digest())), suffix, size, file);
+  }
+
+  /**
+   * 受信した画像を画像実体として保存し、実体の参照数を1増やすメソッド
+   *
+   * <p>同一内容の実体がすでに存在する場合は一時ファイルを削除するのみで、書き込みは行わない。新たに保存した場合は縮小画像の生成ジョブを登録する
+   *
+   * @param image 一時ファイルに書き込まれた画像
+   * @throws IOException 書き込み時の例外を投げるIOExceptionクラス
+   */
+  public void store(UploadedImage image) throws IOException {
+    // 先に行を更新して行ロックを取得し、同じ実体の削除と競合しないようにする
+    imageBlobRepository.acquire(image.getHash(), image.getSize());
+    if (imageStorage.exists(image.getHash())) {
+      Files.deleteIfExists(image.getFile());
+      return;
+    }
+    imageStorage.store(image.getHash(), image.getFile());
+    imageVariantService.enqueue(image.getHash(), image.getSuffix().name());
+
+    // ロールバックされた場合は参照されない画像実体が残るため、削除を予約する
+    String hash = image.getHash();
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCompletion(int status) {
+            if (status == STATUS_ROLLED_BACK) {
+              imageReclaimService.reclaimBlob(hash);
+            }
+          }
+        });
+  }
+
+  /**
+   * imagePathが参照する画像実体の参照数を1増やすメソッド。画像実体を参照しないimagePathの場合は何もしない
+   *
+   * @param imagePath Productに設定されるimagePath
+   */
+  public void retain(String imagePath) {
+    extractHash(imagePath).ifPresent(imageBlobRepository::retain);
+  }
+
+  /**
+   * imagePathが参照する画像実体の参照数を1減らすメソッド
+   *
+   * @param imagePath Productから外されるimagePath
+   * @return Optional<String> 参照がなくなり削除対象となった画像実体のSHA-256
+   */
+  public Optional<String> release(String imagePath) {
+    return extractHash(imagePath)
+        .filter(
+            hash ->
+                imageBlobRepository.release(hash) > 0
+                    && imageBlobRepository.deleteIfUnreferenced(hash) > 0);
+  }
+
+  /**
+   * 画像のnameが画像実体のSHA-256であるか判定するメソッド
+   *
+   * @param name 画像のname
+   * @return boolean SHA-256の形式であればtrue
+   */
+  public boolean isHash(String name) {
+    return HASH_PATTERN.matcher(name).matches();
+  }
+
+  /**
+   * 画像実体を読み込むメソッド
+   *
+   * @param hash 画像のSHA-256
+   * @param fileName レスポンスに用いるファイル名
+   * @return Resource 画像の内容
+   * @throws IOException 画像実体が存在しない場合はFileNotFoundException
+   */
+  public Resource load(String hash, String fileName) throws IOException {
+    return imageStorage.load(hash, fileName);
+  }
+
+  /**
+   * imagePathから画像実体のSHA-256を取り出すメソッド
+   *
+   * @param imagePath ProductのimagePath
+   * @return Optional<String> 画像のSHA-256。画像実体を参照しないimagePathの場合はempty
+   */
+  private Optional<String> extractHash(String imagePath) {
+    if (imagePath == null) {
+      return Optional.empty();
+    }
+    Matcher matcher = IMAGE_PATH_PATTERN.matcher(imagePath);
+    return matcher.matches() ? Optional.of(matcher.group(1)) : Optional.empty();
+  }
+
+  /**
+   * SHA-256のMessageDigestを生成するメソッド
+   *
+   * @return MessageDigest SHA-256のMessageDigest
+   */
+  private MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.config.PathConfig;
+import com.example.restfulapi.entity.ImageBlob;
+import com.example.restfulapi.repository.ImageBlobRepository;
+import com.example.restfulapi.repository.ProductRepository;
+import com.example.restfulapi.storage.ImageStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 不要になった画像を削除するServiceクラス
+ *
+ * <p>削除はコミット後に専用のスレッドでまとめて行うため、ファイルシステムの遅延がリクエストやDBのトランザクションを待たせない。また定期的に画像ディレクトリとproductsテーブルを照合し、取り残された画像を削除する
+ *
+ * @author Natsume Takuya
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageReclaimService {
+
+  private static final int BATCH_SIZE = 100;
+  private static final int SWEEP_BATCH_SIZE = 500;
+  private static final Duration TEMPORARY_FILE_TTL = Duration.ofHours(1);
+  private static final Pattern ID_DIRECTORY_PATTERN = Pattern.compile("[0-9]+");
+
+  private final ImageBlobRepository imageBlobRepository;
+  private final ProductRepository productRepository;
+  private final ImageStorage imageStorage;
+  private final ImageVariantService imageVariantService;
+  private final PathConfig pathConfig;
+  private final TransactionTemplate transactionTemplate;
+
+  private final Queue<String> blobs = new ConcurrentLinkedQueue<>();
+  private final Queue<Path> directories = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "image-reclaimer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /** 削除待ちの画像を削除してからスレッドを停止する */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * 参照がなくなった画像実体とその縮小画像の削除を予約する。コミット後に呼び出す
+   *
+   * <p>削除までの間に同一内容の画像が再度アップロードされた場合は削除しない
+   *
+   * @param hash 画像のSHA-256
+   */
+  public void reclaimBlob(String hash) {
+    blobs.add(hash);
+    schedule();
+  }
+
+  /**
+   * 旧形式で保存された画像のidDirectoryの削除を予約する。コミット後に呼び出す
+   *
+   * @param directory idDirectoryまでのpath
+   */
+  public void reclaimDirectory(Path directory) {
+    directories.add(directory);
+    schedule();
+  }
+
+  /**
+   * 画像ディレクトリとproductsテーブルを照合し、どのProductからも参照されていない画像、一時ファイルを削除する
+   *
+   * @throws IOException ディレクトリ走査時の例外を投げるIOExceptionクラス
+   */
+  public void sweep() throws IOException {
+    Path imageDirectory = Paths.get(pathConfig.getImage());
+    if (Files.isDirectory(imageDirectory)) {
+      Map<BigInteger, Path> idDirectories = new HashMap<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(imageDirectory)) {
+        for (Path directory : stream) {
+          String name = directory.getFileName().toString();
+          if (!Files.isDirectory(directory) || !ID_DIRECTORY_PATTERN.matcher(name).matches()) {
+            continue;
+          }
+          idDirectories.put(new BigInteger(name), directory);
+          if (idDirectories.size() >= SWEEP_BATCH_SIZE) {
+            sweepIdDirectories(idDirectories);
+            idDirectories.clear();
+          }
+        }
+      }
+      sweepIdDirectories(idDirectories);
+    }
+
+    // 受信中、生成中のファイルを消さないよう、一定時間以上更新のない一時ファイルのみを削除する
+    Path temporaryDirectory = pathConfig.getTemporaryDirectory();
+    if (Files.isDirectory(temporaryDirectory)) {
+      Instant borderLine = Instant.now().minus(TEMPORARY_FILE_TTL);
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(temporaryDirectory)) {
+        for (Path file : stream) {
+          if (Files.getLastModifiedTime(file).toInstant().isBefore(borderLine)) {
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * idDirectoryを1回のクエリでまとめて照合し、Productが存在しない、あるいは現在の画像でないファイルの削除を予約する
+   *
+   * @param idDirectories Productのidとそのディレクトリ
+   * @throws IOException ディレクトリ走査時の例外を投げるIOExceptionクラス
+   */
+  private void sweepIdDirectories(Map<BigInteger, Path> idDirectories) throws IOException {
+    if (idDirectories.isEmpty()) {
+      return;
+    }
+    Map<BigInteger, String> imagePaths = new HashMap<>();
+    for (Object[] product : productRepository.findIdAndImagePathByIdIn(idDirectories.keySet())) {
+      imagePaths.put((BigInteger) product[0], (String) product[1]);
+    }
+
+    for (Map.Entry<BigInteger, Path> entry : idDirectories.entrySet()) {
+      String imagePath = imagePaths.get(entry.getKey());
+      String directoryPath = "/api/products/" + entry.getKey() + "/images/";
+      if (imagePath == null || !imagePath.startsWith(directoryPath)) {
+        reclaimDirectory(entry.getValue());
+        continue;
+      }
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(entry.getValue())) {
+        for (Path file : stream) {
+          if (!imagePath.equals(directoryPath + file.getFileName())) {
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+    }
+  }
+
+  /** 削除処理が予約されていなければ予約する */
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      executor.execute(this::drain);
+    }
+  }
+
+  /** 予約された削除をまとめて実行する */
+  private void drain() {
+    try {
+      while (!blobs.isEmpty() || !directories.isEmpty()) {
+        deleteBlobs(poll(blobs));
+        for (Path directory : poll(directories)) {
+          deleteDirectory(directory);
+        }
+      }
+    } catch (RuntimeException ex) {
+      log.error("画像の削除中にエラーが発生しました", ex);
+    } finally {
+      scheduled.set(false);
+      if (!blobs.isEmpty() || !directories.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+
+  /**
+   * 画像実体とその縮小画像を削除する。再度参照された画像実体は1回のクエリでまとめて除外する
+   *
+   * <p>同一画像の登録がコミット前に実体を保存済みと判断した後で実体を削除しないよう、image_blobの行ロックを保持したまま削除する
+   *
+   * @param hashes 削除対象画像のSHA-256
+   */
+  private void deleteBlobs(List<String> hashes) {
+    if (hashes.isEmpty()) {
+      return;
+    }
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          Set<String> referencedHashes =
+              imageBlobRepository.findAllByHashInForUpdate(hashes).stream()
+                  .map(ImageBlob::getHash)
+                  .collect(Collectors.toSet());
+          for (String hash : hashes) {
+            if (referencedHashes.contains(hash)) {
+              continue;
+            }
+            try {
+              imageStorage.delete(hash);
+              imageVariantService.deleteVariants(hash);
+            } catch (IOException ex) {
+              // 削除できなかった画像は次回の削除まで残したままとする
+              log.warn("画像実体の削除に失敗しました : {}", hash, ex);
+            }
+          }
+        });
+  }
+
+  /**
+   * ディレクトリを中のファイルごと削除する
+   *
+   * @param directory 削除対象のディレクトリ
+   */
+  private void deleteDirectory(Path directory) {
+    if (!Files.exists(directory)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.deleteIfExists(path);
+      }
+    } catch (IOException ex) {
+      log.warn("画像ディレクトリの削除に失敗しました : {}", directory, ex);
+    }
+  }
+
+  /**
+   * キューから最大BATCH_SIZE件を取り出す
+   *
+   * @param queue 取り出し元のキュー
+   * @param <T> キューの要素の型
+   * @return List<T> 取り出した要素
+   */
+  private <T> List<T> poll(Queue<T> queue) {
+    List<T> elements = new ArrayList<>();
+    T element;
+    while (elements.size() < BATCH_SIZE && (element = queue.poll()) != null) {
+      elements.add(element);
+    }
+    return elements;
+  }
+}
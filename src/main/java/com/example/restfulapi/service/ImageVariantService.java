@@ -0,0 +1,341 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.config.ImageVariantConfig;
+import com.example.restfulapi.config.PathConfig;
+import com.example.restfulapi.constant.ImageVariantJobStatus;
+import com.example.restfulapi.entity.ImageVariantJob;
+import com.example.restfulapi.repository.ImageVariantJobRepository;
+import com.example.restfulapi.storage.ImageStorage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 画像実体から縮小画像を生成、取得するServiceクラス
+ *
+ * <p>生成はimage_variant_jobテーブルをキューとしてバックグラウンドで行うため、再起動してもジョブは失われない。ワーカー数と待機数には上限を設け、画像処理がリクエスト処理のスレッドやメモリを圧迫しないようにする
+ *
+ * @author Natsume Takuya
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ImageVariantService {
+
+  private final ImageVariantJobRepository imageVariantJobRepository;
+  private final ImageVariantConfig imageVariantConfig;
+  private final ImageStorage imageStorage;
+  private final PathConfig pathConfig;
+
+  private ThreadPoolExecutor executor;
+
+  /** 縮小画像を生成するワーカーを起動する */
+  @PostConstruct
+  public void start() {
+    AtomicInteger threadNumber = new AtomicInteger();
+    executor =
+        new ThreadPoolExecutor(
+            imageVariantConfig.getWorkerThreads(),
+            imageVariantConfig.getWorkerThreads(),
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(imageVariantConfig.getQueueCapacity()),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "image-variant-" + threadNumber.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /** ワーカーを停止する。処理中のジョブは次回起動時に再実行される */
+  @PreDestroy
+  public void stop() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * 処理中のまま期限を過ぎたジョブを待機状態に戻す
+   *
+   * <p>他のノードが処理中のジョブを奪わないよう、停止などで完了しなかったとみなせる期限を過ぎたジョブのみを対象とする。起動時に加え、他のノードが停止した場合に備えて定期的に実行する
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  @Scheduled(fixedDelayString = "${image.variant.leaseTimeoutMillis:600000}")
+  public void recover() {
+    LocalDateTime updatedBefore =
+        LocalDateTime.now().minus(imageVariantConfig.getLeaseTimeoutMillis(), ChronoUnit.MILLIS);
+    int count =
+        imageVariantJobRepository.updateAllStatusUpdatedBefore(
+            ImageVariantJobStatus.PENDING, ImageVariantJobStatus.RUNNING, updatedBefore);
+    if (count > 0) {
+      log.info("期限を過ぎた処理中の縮小画像生成ジョブを再登録しました : {}件", count);
+    }
+  }
+
+  /**
+   * 画像実体の縮小画像生成ジョブを登録する。呼び出し元のトランザクションのコミット後に処理対象となる
+   *
+   * @param hash 画像のSHA-256
+   * @param suffix 画像の拡張子
+   */
+  public void enqueue(String hash, String suffix) {
+    if (imageVariantConfig.getWidths().isEmpty()) {
+      return;
+    }
+    ImageVariantJob job = new ImageVariantJob();
+    job.setHash(hash);
+    job.setSuffix(suffix);
+    job.setStatus(ImageVariantJobStatus.PENDING);
+    imageVariantJobRepository.save(job);
+  }
+
+  /**
+   * 要求された幅に対応する縮小画像のキーを取得する
+   *
+   * <p>要求された幅以上で最も小さい縮小画像を選ぶ。全ての縮小画像より大きい幅の場合や、縮小画像が生成前の場合はemptyとなり、元画像を用いる
+   *
+   * @param hash 元画像のSHA-256
+   * @param width 要求された幅。指定がない場合はnull
+   * @return Optional<String> 縮小画像のキー
+   */
+  public Optional<String> findVariant(String hash, Integer width) {
+    return selectWidth(width)
+        .map(variantWidth -> createVariantKey(hash, variantWidth))
+        .filter(imageStorage::exists);
+  }
+
+  /**
+   * 要求された幅が縮小画像で返される幅か判定する
+   *
+   * @param width 要求された幅。指定がない場合はnull
+   * @return boolean 縮小画像で返される幅であればtrue
+   */
+  public boolean isVariantWidth(Integer width) {
+    return selectWidth(width).isPresent();
+  }
+
+  /**
+   * 要求された幅以上で最も小さい縮小画像の幅を選ぶ
+   *
+   * @param width 要求された幅。指定がない場合はnull
+   * @return Optional<Integer> 縮小画像の幅
+   */
+  private Optional<Integer> selectWidth(Integer width) {
+    if (width == null) {
+      return Optional.empty();
+    }
+    return imageVariantConfig.getWidths().stream()
+        .filter(variantWidth -> variantWidth >= width)
+        .min(Integer::compareTo);
+  }
+
+  /**
+   * 画像実体の全ての縮小画像を削除する
+   *
+   * @param hash 元画像のSHA-256
+   * @throws IOException 削除時の例外を投げるIOExceptionクラス
+   */
+  public void deleteVariants(String hash) throws IOException {
+    for (int width : imageVariantConfig.getWidths()) {
+      imageStorage.delete(createVariantKey(hash, width));
+    }
+  }
+
+  /** 待機中のジョブをワーカーの空きの分だけ取得し、実行する */
+  @Scheduled(fixedDelayString = "${image.variant.pollIntervalMillis:1000}")
+  public void poll() {
+    int capacity = executor.getQueue().remainingCapacity();
+    if (capacity == 0) {
+      return;
+    }
+    List<ImageVariantJob> jobs =
+        imageVariantJobRepository.findByStatusOrderById(
+            ImageVariantJobStatus.PENDING, PageRequest.of(0, capacity));
+    for (ImageVariantJob job : jobs) {
+      if (imageVariantJobRepository.updateStatus(
+              job.getId(),
+              ImageVariantJobStatus.RUNNING,
+              ImageVariantJobStatus.PENDING,
+              LocalDateTime.now())
+          > 0) {
+        executor.execute(() -> run(job));
+      }
+    }
+  }
+
+  /**
+   * ジョブを実行し、成功した場合は削除、失敗した場合は上限まで再試行させる
+   *
+   * <p>大きすぎる画像やメモリ不足などのErrorは再試行しても成功しないため、処理中のまま残して再実行を繰り返さないよう即座に失敗とする
+   *
+   * @param job 実行するジョブ
+   */
+  private void run(ImageVariantJob job) {
+    try {
+      createVariants(job.getHash(), job.getSuffix());
+      imageVariantJobRepository.deleteById(job.getId());
+    } catch (FileNotFoundException ex) {
+      // 生成前に元画像が削除された場合は生成不要
+      imageVariantJobRepository.deleteById(job.getId());
+    } catch (ImageTooLargeException | Error ex) {
+      log.error("縮小画像を生成できません : {}", job.getHash(), ex);
+      imageVariantJobRepository.updateStatusAndIncrementAttempts(
+          job.getId(), ImageVariantJobStatus.FAILED);
+    } catch (IOException | RuntimeException ex) {
+      boolean retry = job.getAttempts() + 1 < imageVariantConfig.getMaxAttempts();
+      log.warn("縮小画像の生成に失敗しました : {} retry={}", job.getHash(), retry, ex);
+      imageVariantJobRepository.updateStatusAndIncrementAttempts(
+          job.getId(), retry ? ImageVariantJobStatus.PENDING : ImageVariantJobStatus.FAILED);
+    }
+  }
+
+  /**
+   * 元画像を読み込み、設定された幅の縮小画像を生成して保存する。元画像が設定された幅以下の場合は元画像をそのまま用いる
+   *
+   * @param hash 元画像のSHA-256
+   * @param suffix 元画像の拡張子
+   * @throws IOException 読み込み、あるいは書き込み時の例外を投げるIOExceptionクラス
+   */
+  private void createVariants(String hash, String suffix) throws IOException {
+    BufferedImage original = read(hash);
+
+    String formatName = "png".equals(suffix) || "gif".equals(suffix) ? suffix : "jpeg";
+    Files.createDirectories(pathConfig.getTemporaryDirectory());
+    for (int width : imageVariantConfig.getWidths()) {
+      String variantKey = createVariantKey(hash, width);
+      if (imageStorage.exists(variantKey)) {
+        continue;
+      }
+      Path file = Files.createTempFile(pathConfig.getTemporaryDirectory(), "variant", ".tmp");
+      try {
+        if (original.getWidth() <= width) {
+          try (InputStream inputStream = imageStorage.load(hash, hash).getInputStream()) {
+            Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+          }
+        } else if (!ImageIO.write(resize(original, width, formatName), formatName, file.toFile())) {
+          throw new IOException("画像を書き込めません : " + formatName);
+        }
+        imageStorage.store(variantKey, file);
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  /**
+   * 元画像を読み込む。デコード前にヘッダーから画素数を取得し、上限を超える画像はデコードしない
+   *
+   * <p>小さなファイルでも巨大な画素数を宣言できるため、ファイルのバイト数だけではデコード後のメモリ使用量を制限できない
+   *
+   * @param hash 元画像のSHA-256
+   * @return BufferedImage 読み込んだ画像
+   * @throws IOException 読み込み時の例外を投げるIOExceptionクラス
+   */
+  private BufferedImage read(String hash) throws IOException {
+    try (InputStream inputStream = imageStorage.load(hash, hash).getInputStream();
+        ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+      Iterator<ImageReader> readers =
+          imageInputStream == null ? null : ImageIO.getImageReaders(imageInputStream);
+      if (readers == null || !readers.hasNext()) {
+        throw new IOException("画像を読み込めません : " + hash);
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(imageInputStream, true, true);
+        long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+        if (pixels > imageVariantConfig.getMaxPixels()) {
+          throw new ImageTooLargeException("画素数が上限を超えています : " + hash + " pixels=" + pixels);
+        }
+        return reader.read(0);
+      } finally {
+        reader.dispose();
+      }
+    }
+  }
+
+  /**
+   * 画像を指定した幅に縦横比を保って縮小する
+   *
+   * @param original 元画像
+   * @param width 縮小後の幅
+   * @param formatName 書き込む形式。jpegは透過に対応しないためRGBで生成する
+   * @return BufferedImage 縮小した画像
+   */
+  private BufferedImage resize(BufferedImage original, int width, String formatName) {
+    int height =
+        Math.max(1, Math.round((float) original.getHeight() * width / original.getWidth()));
+    int type =
+        "jpeg".equals(formatName) || original.getTransparency() == Transparency.OPAQUE
+            ? BufferedImage.TYPE_INT_RGB
+            : BufferedImage.TYPE_INT_ARGB;
+    BufferedImage resized = new BufferedImage(width, height, type);
+    Graphics2D graphics = resized.createGraphics();
+    try {
+      graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(original, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return resized;
+  }
+
+  /**
+   * 縮小画像のキーを生成する。ImageStorageのキーの形式に合わせ、元画像のSHA-256と幅から求めたSHA-256とする
+   *
+   * @param hash 元画像のSHA-256
+   * @param width 縮小画像の幅
+   * @return String 縮小画像のキー
+   */
+  private String createVariantKey(String hash, int width) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      byte[] key = digest.digest((hash + "-w" + width).getBytes(StandardCharsets.US_ASCII));
+      return String.format("%064x", new BigInteger(1, key));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  /** 画素数が上限を超え、縮小画像を生成できないことを表す例外クラス */
+  private static class ImageTooLargeException extends IOException {
+
+    private ImageTooLargeException(String message) {
+      super(message);
+    }
+  }
+}
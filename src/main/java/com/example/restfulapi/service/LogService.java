@@ -1,9 +1,11 @@
 package com.example.restfulapi.service;
 
+import com.example.restfulapi.config.AccessLogConfig;
 import com.example.restfulapi.constant.UrlPatterns;
 import com.example.restfulapi.dto.CalculatedLogInfoDto;
 import com.example.restfulapi.dto.LogContentsDto;
 import com.example.restfulapi.entity.LogContents;
+import com.example.restfulapi.logger.LatencyHistogram;
 import com.example.restfulapi.repository.LogContentsRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,18 +16,17 @@ import org.springframework.transaction.annotation.Transactional;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.Period;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
-import java.util.DoubleSummaryStatistics;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.summarizingDouble;
 
 /**
  * Serviceクラス
@@ -39,7 +40,10 @@ import static java.util.stream.Collectors.summarizingDouble;
 public class LogService {
 
   private static final LocalDate DATE_FOR_AGGREGATION = LocalDate.now().minus(Period.ofDays(1));
+  private static final int OLD_FORMAT_COLUMNS = 5;
+  private static final double MICROS_PER_MILLI = 1000;
   private final LogContentsRepository logContentsRepository;
+  private final AccessLogConfig accessLogConfig;
 
   /** 一連のログ読み込み処理を行う */
   public void processLogContent() throws IOException {
@@ -51,7 +55,7 @@ public class LogService {
     }
 
     log.info("APIログの読込・集計を開始します");
-    Map<ImmutableTriple<String, String, Integer>, DoubleSummaryStatistics> logMap = processLog();
+    Map<ImmutableTriple<String, String, Integer>, LatencySummary> logMap = processLog();
     log.info("APIログの読込・集計が完了しました");
     log.info("APIログの保存を行います");
     saveAggregatedLog(logMap);
@@ -64,11 +68,11 @@ public class LogService {
    * @return List<LogContentsDto> ログDTOのリスト
    * @throws IOException IOExceptionクラス
    */
-  private Map<ImmutableTriple<String, String, Integer>, DoubleSummaryStatistics> processLog()
+  private Map<ImmutableTriple<String, String, Integer>, LatencySummary> processLog()
       throws IOException {
 
     return Files.lines(
-            Paths.get("./src/main/resources/Log/ApiLog." + DATE_FOR_AGGREGATION + ".tsv"),
+            accessLogConfig.getFile(DATE_FOR_AGGREGATION),
             StandardCharsets.UTF_8)
         .map(apiLog -> acquireAdiInfo(Arrays.asList(apiLog.split("\t"))))
         .filter(logContentsDto -> !"Invalid Request".equals(logContentsDto.getApiName()))
@@ -79,20 +83,32 @@ public class LogService {
                         logContentsDto.getApiName(),
                         logContentsDto.getHttpMethod(),
                         logContentsDto.getHttpStatusCode()),
-                summarizingDouble(LogContentsDto::getExecutionTime)));
+                Collector.of(LatencySummary::new, LatencySummary::record, LatencySummary::merge)));
   }
 
   /**
    * ログリストからapi情報を取得
    *
-   * @param logList ログファイルから取得したapiアクセス内容
+   * <p>処理時間をミリ秒で記録した5列の形式と、マイクロ秒で記録し最初の1バイトまでの時間を6列目に加えた形式の両方を読み込む。5列の形式は行末に空白を含むため、各列の前後の空白を取り除いてから解析する
+   *
+   * @param columns ログファイルから取得したapiアクセス内容
    * @return LogContentsDto LogContentsDtoクラス
    */
-  private LogContentsDto acquireAdiInfo(List<String> logList) {
+  LogContentsDto acquireAdiInfo(List<String> columns) {
 
     try {
 
-      int executionTime = Integer.parseInt(logList.get(0));
+      List<String> logList = columns.stream().map(String::trim).collect(Collectors.toList());
+
+      boolean oldFormat = logList.size() == OLD_FORMAT_COLUMNS;
+
+      double executionTime =
+          oldFormat
+              ? Long.parseLong(logList.get(0))
+              : Long.parseLong(logList.get(0)) / MICROS_PER_MILLI;
+
+      Double timeToFirstByte =
+          oldFormat ? null : Long.parseLong(logList.get(5)) / MICROS_PER_MILLI;
 
       String httpMethod = logList.get(1);
 
@@ -107,7 +123,8 @@ public class LogService {
       DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
       LocalDate localDate = LocalDate.parse(date, dateTimeFormatter);
 
-      return convertToDto(executionTime, httpMethod, httpStatusCode, apiName, localDate);
+      return convertToDto(
+          executionTime, timeToFirstByte, httpMethod, httpStatusCode, apiName, localDate);
     } catch (RuntimeException ex) {
       log.error("ログの書式が無効です", ex);
       return LogContentsDto.builder().apiName("Invalid Request").build();
@@ -120,7 +137,7 @@ public class LogService {
    * @param logMap 集計されたログ情報
    */
   private void saveAggregatedLog(
-      Map<ImmutableTriple<String, String, Integer>, DoubleSummaryStatistics> logMap) {
+      Map<ImmutableTriple<String, String, Integer>, LatencySummary> logMap) {
 
     logMap.keySet().stream()
         .map(log -> convertToLogContents(log, logMap))
@@ -136,50 +153,47 @@ public class LogService {
    */
   private LogContents convertToLogContents(
       ImmutableTriple<String, String, Integer> log,
-      Map<ImmutableTriple<String, String, Integer>, DoubleSummaryStatistics> logMap) {
+      Map<ImmutableTriple<String, String, Integer>, LatencySummary> logMap) {
 
     LogContents logContents = new LogContents();
     logContents.setApiName(log.getLeft());
     logContents.setHttpMethod(log.getMiddle());
     logContents.setHttpStatusCode(log.getRight());
-    logContents.setExecutionTime((int) logMap.get(log).getAverage());
-    logContents.setAccessCount((int) logMap.get(log).getCount());
+    LatencySummary summary = logMap.get(log);
+    logContents.setExecutionTime(summary.executionTime.getMean() / MICROS_PER_MILLI);
+    logContents.setMaxExecutionTime(summary.executionTime.getMax() / MICROS_PER_MILLI);
+    logContents.setHistogram(summary.executionTime.encode());
+    if (summary.firstByte.getTotalCount() > 0) {
+      logContents.setTimeToFirstByte(summary.firstByte.getMean() / MICROS_PER_MILLI);
+      logContents.setFirstByteHistogram(summary.firstByte.encode());
+    }
+    logContents.setAccessCount((int) summary.executionTime.getTotalCount());
     logContents.setDate(DATE_FOR_AGGREGATION);
     logContents.setFileName("ApiLog." + DATE_FOR_AGGREGATION + ".tsv");
     return logContents;
   }
 
   /**
-   * Logの検索を行い、DTOクラスのリストとして返す
+   * Logの検索を行い、日ごとのログをAPI名、Httpメソッド、ステータスコードごとに再集計してDTOクラスのリストとして返す
    *
    * @param startDate 検索の開始日
    * @param endDate 検索の終了日
    * @return List<LogContentsDto> 検索結果のリスト
    */
   private List<LogContentsDto> searchLogContentsAsDto(LocalDate startDate, LocalDate endDate) {
-    List<String> logList = logContentsRepository.findByDateAndReCalculate(startDate, endDate);
-
-    return logList.stream()
-        .map(
-            log ->
-                    convertSummaryToDto(convertStringListToLogContents(Arrays.asList(log.split(",")))))
-        .collect(Collectors.toList());
-  }
-
-  /**
-   * StringのリストをDtoクラスのリストに変換
-   *
-   * @param log ログ情報を含むStringのリスト
-   * @return logContents LogContents
-   */
-  private LogContents convertStringListToLogContents(List<String> log) {
-    LogContents logContents = new LogContents();
-    logContents.setApiName(log.get(0));
-    logContents.setHttpMethod(log.get(1));
-    logContents.setHttpStatusCode(Integer.parseInt(log.get(2)));
-    logContents.setAccessCount(Integer.parseInt(log.get(3)));
-    logContents.setExecutionTime(Double.parseDouble(log.get(4)));
-    return logContents;
+    Map<ImmutableTriple<String, String, Integer>, List<LogContents>> logMap =
+        logContentsRepository.findByDateBetween(startDate, endDate).stream()
+            .collect(
+                groupingBy(
+                    logContents ->
+                        ImmutableTriple.of(
+                            logContents.getApiName(),
+                            logContents.getHttpMethod(),
+                            logContents.getHttpStatusCode()),
+                    LinkedHashMap::new,
+                    Collectors.toList()));
+
+    return logMap.values().stream().map(this::convertSummaryToDto).collect(Collectors.toList());
   }
 
   /**
@@ -195,7 +209,8 @@ public class LogService {
   /**
    * DBに保存する項目をもとにDTOクラスに変換
    *
-   * @param executionTime 実行時間の平均
+   * @param executionTime 実行時間(ミリ秒)
+   * @param timeToFirstByte 最初の1バイトまでの時間(ミリ秒)。記録されていない場合はnull
    * @param httpMethod httpMethod
    * @param httpStatusCode httpStatusCode
    * @param apiName APIの名称
@@ -204,6 +219,7 @@ public class LogService {
    */
   private LogContentsDto convertToDto(
       double executionTime,
+      Double timeToFirstByte,
       String httpMethod,
       int httpStatusCode,
       String apiName,
@@ -213,24 +229,63 @@ public class LogService {
         .httpMethod(httpMethod)
         .httpStatusCode(httpStatusCode)
         .executionTime(executionTime)
+        .timeToFirstByte(timeToFirstByte)
         .date(localDate)
         .build();
   }
 
   /**
-   * エンティティクラスをDTOクラスに変換
+   * 同じAPIの日ごとのエンティティクラスを1つのDTOクラスに変換
+   *
+   * <p>平均はアクセス回数で重み付けし、パーセンタイルは日ごとのヒストグラムをマージして求める。ヒストグラム導入前に集計した日はパーセンタイルに含めない。ヒストグラムはマイクロ秒、DTOクラスはミリ秒で保持する
    *
-   * @param logContents LogContentsクラス
+   * @param logContentsList 同じAPI名、Httpメソッド、ステータスコードのLogContentsクラスのリスト
    * @return LogContentsDto LogContentsDtoクラス
    */
-  private LogContentsDto convertSummaryToDto(LogContents logContents) {
-    return LogContentsDto.builder()
-        .apiName(logContents.getApiName())
-        .httpMethod(logContents.getHttpMethod())
-        .httpStatusCode(logContents.getHttpStatusCode())
-        .accessCount(logContents.getAccessCount())
-        .executionTime(logContents.getExecutionTime())
-        .build();
+  private LogContentsDto convertSummaryToDto(List<LogContents> logContentsList) {
+    LogContents first = logContentsList.get(0);
+    long accessCount = 0;
+    double totalExecutionTime = 0;
+    LatencyHistogram histogram = new LatencyHistogram();
+    LatencyHistogram firstByte = new LatencyHistogram();
+    for (LogContents logContents : logContentsList) {
+      accessCount += logContents.getAccessCount();
+      totalExecutionTime += logContents.getExecutionTime() * logContents.getAccessCount();
+      if (logContents.getHistogram() != null) {
+        histogram.merge(
+            LatencyHistogram.decode(
+                logContents.getHistogram(),
+                logContents.getExecutionTime() * MICROS_PER_MILLI,
+                Math.round(logContents.getMaxExecutionTime() * MICROS_PER_MILLI)));
+      }
+      if (logContents.getFirstByteHistogram() != null) {
+        firstByte.merge(
+            LatencyHistogram.decode(
+                logContents.getFirstByteHistogram(),
+                logContents.getTimeToFirstByte() * MICROS_PER_MILLI));
+      }
+    }
+
+    LogContentsDto.LogContentsDtoBuilder builder =
+        LogContentsDto.builder()
+            .apiName(first.getApiName())
+            .httpMethod(first.getHttpMethod())
+            .httpStatusCode(first.getHttpStatusCode())
+            .accessCount((int) accessCount)
+            .executionTime(accessCount == 0 ? 0 : totalExecutionTime / accessCount);
+    if (histogram.getTotalCount() > 0) {
+      builder
+          .p50(histogram.getValueAtPercentile(50) / MICROS_PER_MILLI)
+          .p95(histogram.getValueAtPercentile(95) / MICROS_PER_MILLI)
+          .p99(histogram.getValueAtPercentile(99) / MICROS_PER_MILLI)
+          .maxExecutionTime(histogram.getMax() / MICROS_PER_MILLI);
+    }
+    if (firstByte.getTotalCount() > 0) {
+      builder
+          .timeToFirstByte(firstByte.getMean() / MICROS_PER_MILLI)
+          .firstByteP95(firstByte.getValueAtPercentile(95) / MICROS_PER_MILLI);
+    }
+    return builder.build();
   }
 
   /**
@@ -261,8 +316,7 @@ public class LogService {
   public boolean isLogContentDtoListEmpty(String startDate, String endDate) {
     LocalDate startLocalDate = convertStringToLocalDate(startDate);
     LocalDate endLocalDate = convertStringToLocalDate(endDate);
-    List<LogContentsDto> logContentsDtoList = searchLogContentsAsDto(startLocalDate, endLocalDate);
-    return (logContentsDtoList.size() == 0);
+    return !logContentsRepository.existsByDateBetween(startLocalDate, endLocalDate);
   }
 
   /**
@@ -275,4 +329,25 @@ public class LogService {
         .findByFileName("ApiLog." + DATE_FOR_AGGREGATION + ".tsv")
         .isEmpty();
   }
+
+  /** APIごとの処理全体の時間と、最初の1バイトまでの時間の分布を集計するクラス。時間はマイクロ秒とする */
+  private static class LatencySummary {
+
+    private final LatencyHistogram executionTime = new LatencyHistogram();
+
+    private final LatencyHistogram firstByte = new LatencyHistogram();
+
+    private void record(LogContentsDto logContentsDto) {
+      executionTime.record(Math.round(logContentsDto.getExecutionTime() * MICROS_PER_MILLI));
+      if (logContentsDto.getTimeToFirstByte() != null) {
+        firstByte.record(Math.round(logContentsDto.getTimeToFirstByte() * MICROS_PER_MILLI));
+      }
+    }
+
+    private LatencySummary merge(LatencySummary other) {
+      executionTime.merge(other.executionTime);
+      firstByte.merge(other.firstByte);
+      return this;
+    }
+  }
 }
@@ -1,23 +1,35 @@
 package com.example.restfulapi.service;
 
+import com.example.restfulapi.cache.AccessTokenCache;
+import com.example.restfulapi.cache.UserInfoCache;
 import com.example.restfulapi.config.GithubConfig;
 import com.example.restfulapi.config.TokenSessionConfig;
+import com.example.restfulapi.constant.TokenMode;
 import com.example.restfulapi.dto.UserInfoDto;
 import com.example.restfulapi.entity.AccessToken;
 import com.example.restfulapi.repository.AccessTokenRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.social.github.api.GitHub;
-import org.springframework.social.github.api.GitHubUserProfile;
-import org.springframework.social.github.api.impl.GitHubTemplate;
-import org.springframework.social.github.connect.GitHubConnectionFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.social.oauth2.OAuth2Operations;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.client.RestTemplate;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.UUID;
 
 /**
@@ -30,9 +42,40 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class OauthService {
 
+  private static final String BEARER = "Bearer ";
+  private static final int EXPIRY_CHUNK_SIZE = 1000;
+  /** database方式のトークンは利用者を保持しないため、共通の名前を利用者とする */
+  private static final String DATABASE_TOKEN_PRINCIPAL = "access-token";
+  private static final ParameterizedTypeReference<Map<String, Object>> PROFILE_TYPE =
+      new ParameterizedTypeReference<>() {};
+
   private final GithubConfig githubConfig;
   private final TokenSessionConfig tokenSessionConfig;
   private final AccessTokenRepository accessTokenRepository;
+  private final AccessTokenCache accessTokenCache;
+  private final AccessTokenTouchService accessTokenTouchService;
+  private final SignedTokenService signedTokenService;
+  private final UserInfoCache userInfoCache;
+  private final OAuth2Operations githubOAuth2Operations;
+  private final RestTemplate githubRestTemplate;
+
+  /**
+   * ログインしたユーザーにAPI用のアクセストークンを発行する
+   *
+   * <p>database方式ではトークンを生成してDBに保存し、signed方式ではGithubのユーザー名をサブジェクトとする署名付きトークンを発行する
+   *
+   * @param oauthToken Githubから取得したOAuthToken
+   * @return String 発行したアクセストークン
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public String issueAccessToken(String oauthToken) {
+    if (isSignedMode()) {
+      return signedTokenService.issue(passUserInfoToDto(oauthToken).getUserName());
+    }
+    String generatedToken = generateToken();
+    processAccessToken(generatedToken);
+    return generatedToken;
+  }
 
   /**
    * AccessTokenの作成・保存・削除を行う
@@ -40,7 +83,6 @@ public class OauthService {
    * @param generatedToken AccessToken用に生成されたトークン
    */
   public void processAccessToken(String generatedToken) {
-    deleteTokenCreatedBeforeBoarderLine();
     AccessToken accessToken = new AccessToken();
     accessToken.setAccessToken(generatedToken);
     accessTokenRepository.save(accessToken);
@@ -52,6 +94,7 @@ public class OauthService {
    * @param code OrAuth処理で生成されたコード
    * @return String 取得したOAuthToken
    */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public String getOauthToken(String code) {
     return operations()
         .exchangeForAccess(code, githubConfig.getCallbackUrl(), null)
@@ -69,44 +112,182 @@ public class OauthService {
     return Base64.getEncoder().encodeToString(uuid.toString().getBytes(charset));
   }
 
-  /** 30分前より以前に作成されたAPI用のアクセストークンをDBから一括削除 */
-  public void deleteTokenCreatedBeforeBoarderLine() {
-    accessTokenRepository.findAll().stream()
-        .filter(
-            item ->
-                item.getUpdateTime()
-                    .isBefore(
-                        LocalDateTime.now().minusMinutes(tokenSessionConfig.getBoarderLine())))
-        .forEach(accessTokenRepository::delete);
+  /**
+   * Authorizationヘッダーで送信されたトークンを検証し、利用者を特定する
+   *
+   * <p>signed方式では署名と有効期限の検証のみを行い、トークンに含まれるサブジェクトを利用者とする。database方式では有効なトークンはAccessTokenCacheに保持されるため、通常はDBへの問い合わせを行わない。キャッシュに存在しない場合のみ、トランザクションを開始せずにDBを確認する。有効なトークンの使用は記録し、有効期限を延長する。DBへの書き込みはAccessTokenTouchServiceがまとめて行う
+   *
+   * @param authorization Authorizationヘッダーの値
+   * @return Optional<String> 利用者の名前。トークンが有効でない場合はempty
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public Optional<String> authenticate(String authorization) {
+    String token = extractToken(authorization);
+    if (token == null) {
+      return Optional.empty();
+    }
+    if (isSignedMode()) {
+      return signedTokenService.verify(token);
+    }
+    if (!accessTokenCache.isValid(token, this::existsValidToken)) {
+      return Optional.empty();
+    }
+    accessTokenTouchService.touch(token);
+    return Optional.of(DATABASE_TOKEN_PRINCIPAL);
   }
 
   /**
-   * github認証を行う
+   * トークンを無効にする。database方式ではDBから削除し、signed方式では失効リストに加えてrevoked_tokenテーブルで全ノードに共有する
+   *
+   * @param token 無効にするトークン
+   */
+  public void revokeToken(String token) {
+    if (token == null) {
+      return;
+    }
+    if (isSignedMode()) {
+      signedTokenService.revoke(token);
+      return;
+    }
+    accessTokenRepository.findByAccessToken(token).ifPresent(accessTokenRepository::delete);
+    invalidateAfterCommit(token);
+  }
+
+  /**
+   * boarderLine分以上使用されていないAPI用のアクセストークンをDBから削除する
+   *
+   * <p>update_timeのインデックスによる範囲DELETEを一定件数ずつ別々のトランザクションで実行し、ロックを長く保持しない。削除されるトークンはキャッシュ上でも期限切れとなっているため、個別の無効化は行わない。signed方式では有効期限の切れた失効トークンを削除する
+   *
+   * @return int 削除件数
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public int deleteExpiredTokens() {
+    if (isSignedMode()) {
+      return signedTokenService.deleteExpiredRevocations();
+    }
+    // 未書き込みの使用時刻を反映し、使用中のトークンを削除しないようにする
+    accessTokenTouchService.flush();
+    LocalDateTime borderLine =
+        LocalDateTime.now().minusMinutes(tokenSessionConfig.getBoarderLine());
+    int total = 0;
+    int count;
+    do {
+      count = accessTokenRepository.deleteByUpdateTimeBefore(borderLine, EXPIRY_CHUNK_SIZE);
+      total += count;
+    } while (count == EXPIRY_CHUNK_SIZE);
+    accessTokenCache.purgeExpired();
+    return total;
+  }
+
+  /**
+   * github認証を行う。クライアントはGithubClientConfigで生成したものを共有する
    *
    * @return OAuth2Operations OAuth2の処理を行うインターフェース
    */
   public OAuth2Operations operations() {
-    GitHubConnectionFactory gitHubConnectionFactory =
-        new GitHubConnectionFactory(githubConfig.getClientId(), githubConfig.getClientSecret());
-    return gitHubConnectionFactory.getOAuthOperations();
+    return githubOAuth2Operations;
   }
 
   /**
-   * ユーザー情報をDTOクラスに受け渡す
+   * ユーザー情報をDTOクラスに受け渡す。取得したユーザー情報はUserInfoCacheに保持し、同じOAuthTokenでの再取得ではGithubへ問い合わせない
    *
    * @param userInfo アクセストークンから取得したユーザーinfo
    * @return UserInfoDto DTOクラス
    */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public UserInfoDto passUserInfoToDto(String userInfo) {
-    GitHub gitHub = new GitHubTemplate(userInfo);
-    GitHubUserProfile gitHubUser = gitHub.userOperations().getUserProfile();
+    return userInfoCache.get(userInfo, this::fetchUserInfo);
+  }
+
+  /**
+   * キャッシュしたユーザー情報を破棄する
+   *
+   * @param userInfo ログアウトするユーザーのOAuthToken
+   */
+  public void evictUserInfo(String userInfo) {
+    if (userInfo != null) {
+      userInfoCache.invalidate(userInfo);
+    }
+  }
+
+  /**
+   * GithubのAPIからユーザー情報を取得する
+   *
+   * @param oauthToken ユーザーのOAuthToken
+   * @return UserInfoDto DTOクラス
+   */
+  private UserInfoDto fetchUserInfo(String oauthToken) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.AUTHORIZATION, "token " + oauthToken);
+    headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+    Map<String, Object> profile =
+        Objects.requireNonNull(
+            githubRestTemplate
+                .exchange(
+                    githubConfig.getApiUrl() + "/user",
+                    HttpMethod.GET,
+                    new HttpEntity<>(headers),
+                    PROFILE_TYPE)
+                .getBody());
 
     return UserInfoDto.builder()
-        .userImage(gitHubUser.getProfileImageUrl())
-        .userId(gitHubUser.getId())
-        .userCompany(gitHubUser.getCompany())
-        .userName(gitHubUser.getUsername())
-        .userEmail(gitHubUser.getEmail())
+        .userImage((String) profile.get("avatar_url"))
+        .userId(((Number) profile.get("id")).longValue())
+        .userCompany((String) profile.get("company"))
+        .userName((String) profile.get("login"))
+        .userEmail((String) profile.get("email"))
         .build();
   }
+
+  /**
+   * signed方式のトークンを用いる設定か判定する
+   *
+   * @return boolean signed方式であればtrue
+   */
+  private boolean isSignedMode() {
+    return tokenSessionConfig.getMode() == TokenMode.SIGNED;
+  }
+
+  /**
+   * DB上に有効期限内のトークンが存在するか判定する
+   *
+   * @param token 判定対象のトークン
+   * @return boolean 有効なトークンが存在すればtrue
+   */
+  private boolean existsValidToken(String token) {
+    return accessTokenRepository.existsByAccessTokenAndUpdateTimeAfter(
+        token, LocalDateTime.now().minusMinutes(tokenSessionConfig.getBoarderLine()));
+  }
+
+  /**
+   * Authorizationヘッダーの値からトークンを取り出す
+   *
+   * @param authorization Authorizationヘッダーの値
+   * @return String トークン。Bearer形式でない場合はnull
+   */
+  private String extractToken(String authorization) {
+    if (authorization == null || !authorization.startsWith(BEARER)) {
+      return null;
+    }
+    return authorization.substring(BEARER.length());
+  }
+
+  /**
+   * トランザクションのコミット後にトークンのキャッシュを無効化する。コミット前に無効化すると、削除前の行を読み込んだ他のリクエストが再度格納する可能性があるため
+   *
+   * @param token 無効化するトークン
+   */
+  private void invalidateAfterCommit(String token) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      accessTokenCache.invalidate(token);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            accessTokenCache.invalidate(token);
+          }
+        });
+  }
 }
@@ -0,0 +1,54 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.entity.Product;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * ページングに用いる(update_time, id)のカーソルと、クライアントへ返す不透明な文字列とを相互に変換するクラス
+ *
+ * @author Natsume Takuya
+ */
+final class ProductCursor {
+
+  private static final String CURSOR_DELIMITER = "_";
+
+  private ProductCursor() {}
+
+  /**
+   * ページの末尾Productから不透明なカーソル文字列を生成する
+   *
+   * @param product ページ末尾のProduct
+   * @return String Base64エンコードされたカーソル
+   */
+  static String encode(Product product) {
+    String cursor = product.getUpdateTime() + CURSOR_DELIMITER + product.getId();
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * カーソル文字列をupdateTimeとidに復元する
+   *
+   * @param next クライアントから送信されたカーソル
+   * @return Product updateTimeとidのみを保持するProduct
+   * @throws IllegalArgumentException カーソルの形式が無効な場合の例外
+   */
+  static Product decode(String next) {
+    try {
+      String cursor = new String(Base64.getUrlDecoder().decode(next), StandardCharsets.UTF_8);
+      int delimiterIndex = cursor.lastIndexOf(CURSOR_DELIMITER);
+      Product product = new Product();
+      product.setUpdateTime(LocalDateTime.parse(cursor.substring(0, delimiterIndex)));
+      product.setId(new BigInteger(cursor.substring(delimiterIndex + 1)));
+      return product;
+    } catch (IndexOutOfBoundsException | DateTimeParseException ex) {
+      throw new IllegalArgumentException("Invalid cursor : " + next, ex);
+    }
+  }
+}
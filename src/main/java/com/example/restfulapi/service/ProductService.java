@@ -1,35 +1,62 @@
 package com.example.restfulapi.service;
 
+import com.example.restfulapi.cache.ByteBufferResource;
+import com.example.restfulapi.cache.ImageCache;
+import com.example.restfulapi.cache.ProductCache;
 import com.example.restfulapi.config.PathConfig;
 import com.example.restfulapi.constant.AcceptedSuffixes;
+import com.example.restfulapi.constant.BulkResultStatus;
+import com.example.restfulapi.dto.BulkResultDto;
 import com.example.restfulapi.dto.ProductDto;
+import com.example.restfulapi.dto.ProductPageDto;
 import com.example.restfulapi.entity.Product;
 import com.example.restfulapi.exception.BadRequestException;
+import com.example.restfulapi.exception.ConflictException;
 import com.example.restfulapi.exception.NotFoundException;
-import com.example.restfulapi.exception.UnsupportedMediaException;
 import com.example.restfulapi.form.ProductForm;
+import com.example.restfulapi.index.ProductImageIndex;
+import com.example.restfulapi.index.ProductTitleIndex;
+import com.example.restfulapi.repository.CatalogVersionRepository;
+import com.example.restfulapi.repository.ProductBatchRepository;
 import com.example.restfulapi.repository.ProductRepository;
+import com.example.restfulapi.repository.ProductUpdateRepository;
+import com.example.restfulapi.storage.UploadedImage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.MessageSource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
-import org.springframework.http.HttpEntity;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.io.File;
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Serviceクラス
@@ -41,10 +68,32 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class ProductService {
 
+  private static final int MAX_PAGE_SIZE = 1000;
+  private static final int STREAM_FLUSH_INTERVAL = 500;
+  private static final int MAX_INDEXED_SEARCH_HITS = 10000;
+  private static final int MAX_BULK_SIZE = 10000;
+  // トランザクション内でカタログのバージョン更新を予約済みか判定するためのキー
+  private static final Object CATALOG_CHANGED_KEY = new Object();
+  // 画像実体の共有前に保存された、UUIDをnameとする画像
+  private static final Pattern LEGACY_IMAGE_NAME_PATTERN =
+      Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
   private final ProductRepository productRepository;
-  private final ResourceLoader resourceLoader;
   private final MessageSource messageSource;
   private final PathConfig pathConfig;
+  private final ObjectMapper objectMapper;
+  private final EntityManager entityManager;
+  private final ProductTitleIndex productTitleIndex;
+  private final ProductImageIndex productImageIndex;
+  private final ProductCache productCache;
+  private final ImageCache imageCache;
+  private final ImageBlobService imageBlobService;
+  private final ImageVariantService imageVariantService;
+  private final ImageReclaimService imageReclaimService;
+  private final ProductBatchRepository productBatchRepository;
+  private final CatalogVersionRepository catalogVersionRepository;
+  private final ProductUpdateRepository productUpdateRepository;
+  private final Validator validator;
 
   /**
    * 更新日順で全Productを取得するメソッド
@@ -58,6 +107,71 @@ public class ProductService {
         .collect(Collectors.toList());
   }
 
+  /**
+   * 更新日順でProductを読み込みながらレスポンスへ直接書き出すメソッド。titleを渡すと部分一致検索の結果のみを書き出す
+   *
+   * <p>読み込んだProductは書き出し後すぐにPersistenceContextから切り離すため、件数に関わらずメモリ使用量は一定となる
+   *
+   * @param title 検索に用いる入力文字。空の場合は全件を対象とする
+   * @param outputStream 書き出し先のOutputStream
+   * @param ndjson trueの場合は1行1Productのndjson形式、falseの場合はjson配列形式で書き出す
+   * @throws IOException 書き出し時の例外を投げるIOExceptionクラス
+   */
+  @Transactional(readOnly = true)
+  public void writeOrderByUpdateTime(String title, OutputStream outputStream, boolean ndjson)
+      throws IOException {
+    try (Stream<Product> products = streamOrderByUpdateTime(title);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.setRootValueSeparator(null);
+      if (!ndjson) {
+        generator.writeStartArray();
+      }
+
+      int count = 0;
+      for (Iterator<Product> iterator = products.iterator(); iterator.hasNext(); ) {
+        Product product = iterator.next();
+        generator.writeObject(convertToProductDto(product));
+        if (ndjson) {
+          generator.writeRaw('\n');
+        }
+        entityManager.detach(product);
+
+        // 先頭行はすぐに送信し、以降は一定件数ごとにまとめて送信する
+        if (count++ % STREAM_FLUSH_INTERVAL == 0) {
+          generator.flush();
+        }
+      }
+
+      if (!ndjson) {
+        generator.writeEndArray();
+      }
+    }
+  }
+
+  /**
+   * 書き出し対象のProductを更新日順に逐次読み込むメソッド
+   *
+   * <p>titleを渡した場合は一覧・ページ単位の取得と同様に、titleインデックスが使えればidで、使えなければLIKE検索で読み込む
+   *
+   * @param title 検索に用いる入力文字。空の場合は全件を対象とする
+   * @return Stream<Product> 書き出し対象ProductのStream
+   */
+  private Stream<Product> streamOrderByUpdateTime(String title) {
+    if (StringUtils.isBlank(title)) {
+      return productRepository.streamAllByOrderByUpdateTime();
+    }
+    Optional<Set<BigInteger>> ids = searchTitleIndex(title);
+    if (ids.isEmpty()) {
+      return productRepository.streamByTitleNormalizedContainingOrderByUpdateTime(
+          ProductTitleIndex.normalize(title));
+    } else if (ids.get().isEmpty()) {
+      return Stream.empty();
+    } else {
+      return productRepository.streamByIdInOrderByUpdateTime(ids.get());
+    }
+  }
+
   /**
    * Productに対して部分一致のtitle検索を行うメソッド
    *
@@ -65,10 +179,105 @@ public class ProductService {
    * @return List<ProductDTO> 検索にヒットしたProductのリスト
    */
   public List<ProductDto> findByTitleContainingOrderByUpdateTime(String title) {
+    Optional<Set<BigInteger>> ids = searchTitleIndex(title);
+    List<Product> products;
+    if (ids.isEmpty()) {
+      products =
+          productRepository.findByTitleNormalizedContainingOrderByUpdateTime(
+              ProductTitleIndex.normalize(title));
+    } else if (ids.get().isEmpty()) {
+      products = Collections.emptyList();
+    } else {
+      products = productRepository.findByIdInOrderByUpdateTime(ids.get());
+    }
 
-    return productRepository.findByTitleContainingOrderByUpdateTime(title).stream()
-        .map(this::convertToProductDto)
-        .collect(Collectors.toList());
+    return products.stream().map(this::convertToProductDto).collect(Collectors.toList());
+  }
+
+  /**
+   * titleインデックスから部分一致するProductのidを取得するメソッド
+   *
+   * <p>インデックスが構築中の場合や、ヒット件数が多くIN句が肥大化する場合はDBでのLIKE検索に委ねるためemptyを返す。LIKE検索はインデックスと同じ規則で正規化したtitle_normalized列に対して行うため、どちらで検索しても結果は同じとなる
+   *
+   * @param title 検索に用いる入力文字
+   * @return Optional<Set<BigInteger>> 部分一致したProductのid
+   */
+  private Optional<Set<BigInteger>> searchTitleIndex(String title) {
+    if (!productTitleIndex.isReady()) {
+      return Optional.empty();
+    }
+    Set<BigInteger> ids = productTitleIndex.search(title);
+    return ids.size() > MAX_INDEXED_SEARCH_HITS ? Optional.empty() : Optional.of(ids);
+  }
+
+  /**
+   * (update_time, id)をキーとしたカーソルでProductをページ単位に取得するメソッド
+   *
+   * @param title 検索に用いる入力文字。空の場合は全件を対象とする
+   * @param limit 1ページあたりの取得件数
+   * @param next 前ページで返却されたカーソル。先頭ページの場合はnull
+   * @return ProductPageDto 該当ページのProductと次ページのカーソル
+   */
+  @Transactional(readOnly = true)
+  public ProductPageDto findPageOrderByUpdateTime(String title, int limit, String next) {
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new BadRequestException(
+          messageSource.getMessage("error.products.limit", null, Locale.JAPAN));
+    }
+
+    // 次ページの有無を判定するため1件多く取得する
+    PageRequest pageRequest = PageRequest.of(0, limit + 1);
+    Product cursor = next == null ? null : decodeCursor(next);
+    Optional<Set<BigInteger>> ids =
+        StringUtils.isBlank(title) ? Optional.empty() : searchTitleIndex(title);
+    List<Product> products;
+    if (StringUtils.isBlank(title)) {
+      products =
+          cursor == null
+              ? productRepository.findFirstPage(pageRequest)
+              : productRepository.findNextPage(
+                  cursor.getUpdateTime(), cursor.getId(), pageRequest);
+    } else if (ids.isEmpty()) {
+      products =
+          cursor == null
+              ? productRepository.findFirstPageByTitleNormalizedContaining(
+                  ProductTitleIndex.normalize(title), pageRequest)
+              : productRepository.findNextPageByTitleNormalizedContaining(
+                  ProductTitleIndex.normalize(title),
+                  cursor.getUpdateTime(),
+                  cursor.getId(),
+                  pageRequest);
+    } else if (ids.get().isEmpty()) {
+      products = Collections.emptyList();
+    } else {
+      products =
+          cursor == null
+              ? productRepository.findFirstPageByIdIn(ids.get(), pageRequest)
+              : productRepository.findNextPageByIdIn(
+                  ids.get(), cursor.getUpdateTime(), cursor.getId(), pageRequest);
+    }
+
+    boolean hasNext = products.size() > limit;
+    List<Product> page = hasNext ? products.subList(0, limit) : products;
+    return ProductPageDto.builder()
+        .products(page.stream().map(this::convertToProductDto).collect(Collectors.toList()))
+        .next(hasNext ? ProductCursor.encode(page.get(page.size() - 1)) : null)
+        .build();
+  }
+
+  /**
+   * カーソル文字列をupdateTimeとidに復元するメソッド
+   *
+   * @param next クライアントから送信されたカーソル
+   * @return Product updateTimeとidのみを保持するProduct
+   */
+  private Product decodeCursor(String next) {
+    try {
+      return ProductCursor.decode(next);
+    } catch (IllegalArgumentException ex) {
+      throw new BadRequestException(
+          messageSource.getMessage("error.products.cursor.invalid", null, Locale.JAPAN));
+    }
   }
 
   /**
@@ -86,6 +295,96 @@ public class ProductService {
                         messageSource.getMessage("error.products.notfound.code", null, Locale.JAPAN)));
   }
 
+  /**
+   * idでProductを検索し、行ロックを取得するメソッド
+   *
+   * @param id 検索対象Productのid
+   * @return Product 該当Product
+   */
+  private Product findByIdForUpdate(BigInteger id) {
+    return productRepository
+        .findByIdForUpdate(id)
+        .orElseThrow(
+            () ->
+                new NotFoundException(
+                    messageSource.getMessage("error.products.notfound.code", null, Locale.JAPAN)));
+  }
+
+  /**
+   * idでProductを検索し、DTOクラスとして返すメソッド
+   *
+   * <p>キャッシュにヒットした場合はトランザクションを開始せず、DBにもアクセスしない
+   *
+   * @param id 検索に用いるid
+   * @return ProductDto 検索にヒットしたProductのDTOクラス
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public ProductDto findDtoById(BigInteger id) {
+    return productCache.get(id, key -> convertToProductDto(findById(key)));
+  }
+
+  /**
+   * Productのidとversionからstrong ETagを生成するメソッド
+   *
+   * <p>update_timeは秒単位のため、同じ秒に行われた2回の更新を区別できるよう更新ごとに増えるversionを用いる
+   *
+   * @param productDto ETag生成対象のProductDto
+   * @return String ダブルクォートで囲まれたETag
+   */
+  public String createETag(ProductDto productDto) {
+    return "\"" + productDto.getId() + "-" + productDto.getVersion() + "\"";
+  }
+
+  /**
+   * Product一覧のためのカタログ全体のETagを生成するメソッド
+   *
+   * <p>カタログのバージョンは登録・更新・削除のたびにmarkCatalogChangedで増えるため、主キーによる1行の参照のみで生成できる
+   *
+   * @return String ダブルクォートで囲まれたETag
+   */
+  @Transactional(readOnly = true)
+  public String createCatalogETag() {
+    return "\"catalog-" + catalogVersionRepository.find() + "\"";
+  }
+
+  /**
+   * カタログのバージョンを増やすメソッド
+   *
+   * <p>バージョンの行ロックを保持する時間を短くするため、トランザクション内ではコミット直前に1回だけ増やす
+   */
+  private void markCatalogChanged() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      catalogVersionRepository.increment();
+      return;
+    }
+    if (TransactionSynchronizationManager.hasResource(CATALOG_CHANGED_KEY)) {
+      return;
+    }
+    TransactionSynchronizationManager.bindResource(CATALOG_CHANGED_KEY, Boolean.TRUE);
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void beforeCommit(boolean readOnly) {
+            catalogVersionRepository.increment();
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(CATALOG_CHANGED_KEY);
+          }
+        });
+  }
+
+  /**
+   * LocalDateTimeをエポックミリ秒に変換するメソッド
+   *
+   * @param localDateTime 変換対象のLocalDateTime
+   * @return long エポックミリ秒
+   */
+  public long toEpochMilli(LocalDateTime localDateTime) {
+    return localDateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+  }
+
   /**
    * Productの登録を行うメソッド
    *
@@ -105,27 +404,158 @@ public class ProductService {
 
     Product product = new Product();
     passProductInfoFromForm(product, productForm, title, description, price);
+    imageBlobService.retain(product.getImagePath());
+    markCatalogChanged();
+    runAfterCommit(() -> productTitleIndex.put(product.getId(), title));
+    runAfterCommit(() -> productImageIndex.put(product.getId(), product.getImagePath()));
     return convertToProductDto(product);
   }
 
+  /**
+   * Productの一括登録を行うメソッド
+   *
+   * <p>登録はJDBCバッチで行い、titleの重複はDBのユニークキーで判定する。DBの照合順序は大文字・小文字のほかアクセントや末尾の空白も区別しないため、Java側では判定しない。validationエラーや重複のあるProductは登録せず、その理由を結果として返す
+   *
+   * @param productForms ProductFormクラスのリスト
+   * @return List<BulkResultDto> リクエストの順序に対応した1件ごとの処理結果
+   */
+  public List<BulkResultDto> registerProducts(List<ProductForm> productForms) {
+    if (productForms.isEmpty() || productForms.size() > MAX_BULK_SIZE) {
+      throw new BadRequestException(
+          messageSource.getMessage("error.products.bulk.size", null, Locale.JAPAN));
+    }
+
+    BulkResultDto[] results = new BulkResultDto[productForms.size()];
+    // 完全に同一のtitleはリクエスト内で先頭のみを登録対象とする。照合順序上の重複はINSERT時に判定する
+    Map<String, Integer> validForms = new LinkedHashMap<>();
+    for (int i = 0; i < productForms.size(); i++) {
+      ProductForm productForm = productForms.get(i);
+      if (productForm == null) {
+        results[i] =
+            createBulkResult(
+                i,
+                BulkResultStatus.INVALID,
+                messageSource.getMessage("error.products.invalid.detail", null, Locale.JAPAN));
+        continue;
+      }
+      Set<ConstraintViolation<ProductForm>> violations = validator.validate(productForm);
+      if (!violations.isEmpty()) {
+        results[i] =
+            createBulkResult(
+                i,
+                BulkResultStatus.INVALID,
+                violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining(" ")));
+      } else if (validForms.putIfAbsent(productForm.getTitle(), i) != null) {
+        results[i] = createBulkResult(i, BulkResultStatus.DUPLICATED, null);
+      }
+    }
+    if (validForms.isEmpty()) {
+      return Arrays.asList(results);
+    }
+
+    // 登録前から存在するProductを除くため、照合順序上titleが一致する既存のidを控えておく
+    List<String> titles = new ArrayList<>(validForms.keySet());
+    Set<BigInteger> existingIds = new HashSet<>(productRepository.findIdByTitleIn(titles));
+    List<ProductForm> insertForms =
+        validForms.values().stream().map(productForms::get).collect(Collectors.toList());
+    productBatchRepository.insertAllIgnoringDuplicates(insertForms);
+
+    // 登録されたProductのtitleはリクエストのtitleそのものであるため、完全一致で元の位置に対応付ける
+    for (Product product : productRepository.findByTitleIn(titles)) {
+      if (existingIds.contains(product.getId())) {
+        continue;
+      }
+      Integer index = validForms.remove(product.getTitle());
+      if (index == null) {
+        continue;
+      }
+      results[index] =
+          BulkResultDto.builder()
+              .index(index)
+              .status(BulkResultStatus.CREATED)
+              .product(convertToProductDto(product))
+              .build();
+      imageBlobService.retain(product.getImagePath());
+      runAfterCommit(() -> productTitleIndex.put(product.getId(), product.getTitle()));
+      runAfterCommit(() -> productImageIndex.put(product.getId(), product.getImagePath()));
+    }
+    if (validForms.size() < insertForms.size()) {
+      markCatalogChanged();
+    }
+
+    // 登録されなかったProductは、既存あるいはリクエスト内の他のProductと照合順序上titleが重複している
+    for (int index : validForms.values()) {
+      results[index] = createBulkResult(index, BulkResultStatus.DUPLICATED, null);
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * 一括登録で登録されなかったProductの処理結果を生成するメソッド
+   *
+   * @param index リクエスト配列内での位置
+   * @param status 処理結果
+   * @param message 登録されなかった理由。nullの場合はtitle重複のメッセージを用いる
+   * @return BulkResultDto 処理結果
+   */
+  private BulkResultDto createBulkResult(int index, BulkResultStatus status, String message) {
+    return BulkResultDto.builder()
+        .index(index)
+        .status(status)
+        .message(
+            message != null
+                ? message
+                : messageSource.getMessage("error.products.duplication", null, Locale.JAPAN))
+        .build();
+  }
+
   /**
    * Productの更新を行うメソッド
    *
+   * <p>更新は1回のUPDATEで行い、更新後のversionはUPDATEの結果から取得する。UPDATEで変更しないimagePathとcreateTimeのみを主キーで読み戻し、更新後の行全体を返す。UPDATEが該当しなかった場合のみ、存在しないかversionが一致しないかを判定する。imagePathは画像のアップロード・更新APIでのみ変更するため、ProductFormに含まれていても無視する
+   *
    * @param id 更新対象Productのid
    * @param productForm ProductFormクラス
    * @return Product 更新されたProduct
    */
   public ProductDto editProduct(BigInteger id, ProductForm productForm) {
-    Product product = findById(id);
-
     String title = productForm.getTitle();
     String description = productForm.getDescription();
     int price = productForm.getPrice();
+    LocalDateTime updateTime = currentUpdateTime();
+
+    OptionalLong version =
+        productUpdateRepository.update(
+            id, title, description, price, updateTime, productForm.getVersion());
+    if (version.isEmpty()) {
+      findById(id);
+      throw new ConflictException(
+          messageSource.getMessage("error.products.conflict.code", null, Locale.JAPAN));
+    }
 
-    passProductInfoFromForm(product, productForm, title, description, price);
+    evictProduct(id);
+    markCatalogChanged();
+    runAfterCommit(() -> productTitleIndex.put(id, title));
+    Product product = productUpdateRepository.findUnchangedColumns(id);
+    product.setTitle(title);
+    product.setDescription(description);
+    product.setPrice(price);
+    product.setVersion(version.getAsLong());
+    product.setUpdateTime(updateTime);
     return convertToProductDto(product);
   }
 
+  /**
+   * UPDATE文で設定する更新日時を取得するメソッド。DBのdatetime型に合わせて秒未満を切り捨てる
+   *
+   * @return LocalDateTime 現在日時
+   */
+  private LocalDateTime currentUpdateTime() {
+    return LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+  }
+
   /**
    * 　ProductFormで受けたデータをProductに渡すメソッド
    *
@@ -138,6 +568,7 @@ public class ProductService {
   private void passProductInfoFromForm(
       Product product, ProductForm productForm, String title, String description, int price) {
     product.setTitle(title);
+    product.setTitleNormalized(ProductTitleIndex.normalize(title));
     product.setDescription(description);
     product.setPrice(price);
     product.setImagePath(productForm.getImagePath());
@@ -147,40 +578,79 @@ public class ProductService {
   /**
    * Productの削除を行うメソッド
    *
+   * <p>画像の削除はコミット後にImageReclaimServiceで非同期に行い、ファイル操作の間トランザクションを待たせない
+   *
    * @param id 削除対象Productのid
    */
-  public void deleteProduct(String pathToImageDirectory, BigInteger id) throws IOException {
-    Path pathToIdDirectory = Paths.get(pathToImageDirectory + id);
-    deleteDirectoryIfExist(pathToIdDirectory);
+  public void deleteProduct(String pathToImageDirectory, BigInteger id) {
     Product product = findById(id);
     productRepository.delete(product);
+    releaseImage(product.getImagePath());
+    markCatalogChanged();
+    Path pathToIdDirectory = cretePathToIdDirectory(pathToImageDirectory, id);
+    runAfterCommit(() -> imageReclaimService.reclaimDirectory(pathToIdDirectory));
+    evictProduct(id);
+    runAfterCommit(() -> imageCache.evictByPrefix(id + "/"));
+    runAfterCommit(() -> productTitleIndex.remove(id));
+    runAfterCommit(() -> productImageIndex.remove(id));
   }
 
   /**
-   * 画像の更新を行うメソッド
+   * 更新・削除されたProductをキャッシュから取り除くメソッド
    *
-   * @param id 画像更新対象Productのid
-   * @param imagePath 対応するimagePathとして保存されるpath
+   * <p>コミット前に読み込まれた古い値が再格納されないよう、コミット後にも再度無効化する
+   *
+   * @param id 対象Productのid
    */
-  private void updateImagePath(BigInteger id, String imagePath) {
-    Product product = findById(id);
-
-    product.setImagePath(imagePath);
-    productRepository.save(product);
+  private void evictProduct(BigInteger id) {
+    productCache.invalidate(id);
+    runAfterCommit(() -> productCache.invalidate(id));
   }
 
   /**
-   * アップロードされた画像のvalidationを行うメソッド
+   * imagePathが参照する画像実体の参照数を減らし、参照がなくなった場合はコミット後に削除を予約するメソッド
    *
-   * @param suffix 画像の拡張子
+   * @param imagePath Productから外されるimagePath
    */
-  private void validateImage(String suffix) {
+  private void releaseImage(String imagePath) {
+    imageBlobService
+        .release(imagePath)
+        .ifPresent(hash -> runAfterCommit(() -> imageReclaimService.reclaimBlob(hash)));
+  }
 
-    if (!AcceptedSuffixes.isSuffixValid(suffix)) {
-      throw new UnsupportedMediaException(
-              messageSource.getMessage("error.products.image.suffix", null, Locale.JAPAN));
+  /**
+   * トランザクションのコミット後に処理を実行するメソッド。トランザクション外の場合は即時に実行する
+   *
+   * @param runnable コミット後に実行する処理
+   */
+  private void runAfterCommit(Runnable runnable) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      runnable.run();
+      return;
     }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            runnable.run();
+          }
+        });
   }
+
+  /**
+   * 画像の更新を行うメソッド
+   *
+   * @param id 画像更新対象Productのid
+   * @param imagePath 対応するimagePathとして保存されるpath
+   */
+  private void updateImagePath(BigInteger id, String imagePath) {
+    productRepository.updateImagePath(id, imagePath, currentUpdateTime());
+    evictProduct(id);
+    markCatalogChanged();
+    runAfterCommit(() -> imageCache.evictByPrefix(id + "/"));
+    runAfterCommit(() -> productImageIndex.put(id, imagePath));
+  }
+
   /**
    * 同一のtitleを持つProductがすでにあればexceptionを投げるメソッド
    *
@@ -193,103 +663,35 @@ public class ProductService {
   /**
    * 画像の更新処理を行うメソッド
    *
+   * <p>画像は内容のSHA-256をnameとして保存し、同一内容の画像は複数のProductで1つの実体を共有する。画像の受信はImageBlobService#receiveでトランザクションの外で済ませておく
+   *
    * @param id 画像更新対象ProductのId
-   * @param productImage アップロードされた画像
+   * @param image 一時ファイルに受信済みの画像
    * @return ProductDTO imagePath更新後の該当Product
    */
-  public ProductDto updateImage(BigInteger id, MultipartFile productImage) throws IOException {
-    Product product = findById(id);
+  public ProductDto updateImage(BigInteger id, UploadedImage image) throws IOException {
     try {
-      // Nullの場合にはcatchしてハンドル
-      String suffix = (productImage.getContentType()).split("/")[1].toLowerCase();
-      validateImage(suffix);
-    } catch (NullPointerException ex) {
-      throw new BadRequestException(
-              messageSource.getMessage("error.products.image.null", null, Locale.JAPAN));
-    }
-
-    // 存在しない場合に、directoryの作成
-    createImageDirectory();
-
-    // もしすでに画像がある場合には実体を削除
-    String suffix = (productImage.getContentType()).split("/")[1].toLowerCase();
-    Path pathToIdDirectory = cretePathToIdDirectory(pathConfig.getImage(), id);
-    deleteDirectoryIfExist(pathToIdDirectory);
-    Files.createDirectories(pathToIdDirectory);
-
-    UUID uuid = UUID.randomUUID();
-    Path pathToImageFile = Paths.get(pathConfig.getImage() + "/" + id + "/" + uuid + "." + suffix);
-    productImage.transferTo(pathToImageFile);
-
-    updateImagePath(id, "/api/products/" + id + "/images/" + uuid + "." + suffix);
-    return convertToProductDto(product);
-  }
-
-  /** 画像を保存するimageDirectoryを作成するメソッド */
-  private void createImageDirectory() throws IOException {
-    Path pathToImageDirectory = Paths.get(pathConfig.getImage());
-    Files.createDirectories(pathToImageDirectory);
-  }
-
-  /**
-   * もし既存のディレクトリがすでに存在する場合にはその削除を行うメソッド
-   *
-   * @param path idDirectoryFileまでのpath
-   */
-  private void deleteDirectoryIfExist(Path path) throws IOException {
-    File idDirectoryFile = new File(String.valueOf(path));
-
-    if (idDirectoryFile.exists()) {
-      File[] previousImage = idDirectoryFile.listFiles();
-      for (int i = 0; i < Objects.requireNonNull(idDirectoryFile.list()).length; i++) {
-
-        if (previousImage != null) {
-          boolean isPreviousImageDeleted = previousImage[i].delete();
-          if (!isPreviousImageDeleted) {
-            throw new IOException();
-          }
-        }
-      }
-      boolean isIdDirectoryFileDeleted = idDirectoryFile.delete();
-      if (!isIdDirectoryFileDeleted) {
-        throw new IOException();
+      String previousImagePath = findByIdForUpdate(id).getImagePath();
+      imageBlobService.store(image);
+      String imagePath = createImagePath(id, image.getFileName());
+      if (imagePath.equals(previousImagePath)) {
+        // 同一画像の再アップロードのため、storeで増やした参照数を戻す
+        imageBlobService.release(imagePath);
+        return convertToProductDto(findById(id));
       }
-    }
-  }
 
-  /**
-   * 画像をバイト配列に変換するメソッド
-   *
-   * @param id 画像の格納されているidDirectory番号
-   * @param name 画像のname
-   * @param suffix 画像のsuffix
-   * @return byte[] バイト配列に変換された画像データ
-   * @throws IOException 画像処理時の例外を投げるIOExceptionクラス
-   */
-  private byte[] convertImageToByte(BigInteger id, String name, String suffix) throws IOException {
-    Resource resource =
-            resourceLoader.getResource(
-            "classpath:" + "/imageDirectory/" + id + "/" + name + "." + suffix);
-    try (InputStream image = resource.getInputStream()) {
-      return IOUtils.toByteArray(image);
-    } catch (IOException ex) {
-      throw new IOException();
+      updateImagePath(id, imagePath);
+      releaseImage(previousImagePath);
+      // 旧形式で保存された画像が残っている場合には、コミット後に実体の削除を予約
+      Path pathToIdDirectory = cretePathToIdDirectory(pathConfig.getImage(), id);
+      runAfterCommit(() -> imageReclaimService.reclaimDirectory(pathToIdDirectory));
+      return convertToProductDto(findById(id));
+    } finally {
+      // 保存されずに残った一時ファイルを削除
+      Files.deleteIfExists(image.getFile());
     }
   }
 
-  /**
-   * HTTPのヘッダーを生成するメソッド
-   *
-   * @param byteArray バイト配列に変換された画像データ
-   * @return 生成されたHttpHeadersクラス
-   */
-  private HttpHeaders setHeaders(byte[] byteArray) {
-    HttpHeaders headers = new HttpHeaders();
-    headers.setContentLength(byteArray.length);
-
-    return headers;
-  }
-
   /**
    * 拡張子に応じて適切なMediaTypeを設定するメソッド
    *
@@ -322,12 +724,117 @@ public class ProductService {
     return Paths.get(pathToImageDirectory + "/" + id);
   }
 
-  public HttpEntity<byte[]> getImage(BigInteger id, String name, String suffix) throws IOException {
-    findById(id);
-    byte[] byteArray = convertImageToByte(id, name, suffix);
-    HttpHeaders headers = setHeaders(byteArray);
+  /**
+   * 画像を取得するメソッド
+   *
+   * <p>画像はヒープ上のバイト配列に読み込まず、ImageStorageのResource、あるいは旧形式の画像は画像キャッシュのByteBufferかPathConfigのディレクトリ上のファイルをそのまま返す。Rangeリクエストには呼び出し元のSpring
+   * MVCがResourceRegionで対応する
+   *
+   * @param id 画像の格納されているidDirectory番号
+   * @param name 画像のname
+   * @param suffix 画像のsuffix
+   * @param imageKey resolveImageKeyで取得した、返却する画像実体あるいは縮小画像のキー
+   * @return ResponseEntity<Resource> 画像ファイルとContent-Typeを持つレスポンス
+   * @throws IOException 画像が存在しない場合の例外を投げるIOExceptionクラス
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public ResponseEntity<Resource> getImage(
+      BigInteger id, String name, String suffix, String imageKey) throws IOException {
+    validateCurrentImage(id, name, suffix);
+    HttpHeaders headers = new HttpHeaders();
     adjustMediaType(headers, suffix);
-    return new HttpEntity<>(byteArray, headers);
+
+    String fileName = name + "." + suffix;
+    if (imageBlobService.isHash(name)) {
+      return new ResponseEntity<>(
+          imageBlobService.load(imageKey, fileName), headers, HttpStatus.OK);
+    }
+
+    // 画像実体の共有前に保存された画像はidDirectoryから読み込む
+    Path pathToImageFile = cretePathToIdDirectory(pathConfig.getImage(), id).resolve(fileName);
+    if (!Files.isReadable(pathToImageFile)) {
+      throw new FileNotFoundException(fileName);
+    }
+
+    Optional<ByteBuffer> cachedImage = imageCache.get(id + "/" + fileName, pathToImageFile);
+    Resource image =
+        cachedImage.isPresent()
+            ? new ByteBufferResource(cachedImage.get(), fileName)
+            : new FileSystemResource(pathToImageFile);
+    return new ResponseEntity<>(image, headers, HttpStatus.OK);
+  }
+
+  /**
+   * 返却する画像のキーを取得するメソッド。キーは画像の内容から決まるため、そのままETagとして用いることができる
+   *
+   * <p>幅が指定され、対応する縮小画像が生成済みの場合は縮小画像のキーを、それ以外の場合は画像のnameを返す
+   *
+   * @param id 画像取得対象Productのid
+   * @param name 画像のname
+   * @param suffix 画像のsuffix
+   * @param width 要求された幅。指定がない場合はnull
+   * @return String 画像実体あるいは縮小画像のキー
+   * @throws FileNotFoundException 該当Productの現在の画像でない場合の例外
+   */
+  @Transactional(propagation = Propagation.SUPPORTS)
+  public String resolveImageKey(BigInteger id, String name, String suffix, Integer width)
+      throws FileNotFoundException {
+    validateCurrentImage(id, name, suffix);
+    if (!imageBlobService.isHash(name)) {
+      return name;
+    }
+    return imageVariantService.findVariant(name, width).orElse(name);
+  }
+
+  /**
+   * 縮小画像が要求されたが生成前のため、元画像を返すことになるか判定するメソッド
+   *
+   * @param name 画像のname
+   * @param width 要求された幅。指定がない場合はnull
+   * @param imageKey resolveImageKeyで取得したキー
+   * @return boolean 縮小画像の生成前であればtrue
+   */
+  public boolean isImageVariantPending(String name, Integer width, String imageKey) {
+    return imageBlobService.isHash(name)
+        && imageKey.equals(name)
+        && imageVariantService.isVariantWidth(width);
+  }
+
+  /**
+   * 画像のURLが該当Productの現在の画像を指しているか確認するメソッド
+   *
+   * <p>判定はimagePathインデックスのみで行い、DBへは問い合わせない。インデックスの構築前のみProductのimagePathと照合する
+   *
+   * @param id 画像取得対象Productのid
+   * @param name 画像のname
+   * @param suffix 画像のsuffix
+   * @throws FileNotFoundException 存在しないProduct、あるいは差し替え前の画像の場合の例外
+   */
+  private void validateCurrentImage(BigInteger id, String name, String suffix)
+      throws FileNotFoundException {
+    String fileName = name + "." + suffix;
+    if (!imageBlobService.isHash(name) && !LEGACY_IMAGE_NAME_PATTERN.matcher(name).matches()) {
+      throw new FileNotFoundException(fileName);
+    }
+    String imagePath = createImagePath(id, fileName);
+    boolean isCurrentImage =
+        productImageIndex.isReady()
+            ? productImageIndex.contains(id, imagePath)
+            : imagePath.equals(findDtoById(id).getImagePath());
+    if (!isCurrentImage) {
+      throw new FileNotFoundException(fileName);
+    }
+  }
+
+  /**
+   * 画像取得APIのpathを生成するメソッド
+   *
+   * @param id 画像を持つProductのid
+   * @param fileName 画像のファイル名
+   * @return String ProductのimagePathとして保存されるpath
+   */
+  private String createImagePath(BigInteger id, String fileName) {
+    return "/api/products/" + id + "/images/" + fileName;
   }
 
   /**
@@ -343,6 +850,7 @@ public class ProductService {
         .description(product.getDescription())
         .price(product.getPrice())
         .imagePath(product.getImagePath())
+        .version(product.getVersion())
         .createTime(product.getCreateTime())
         .updateTime(product.getUpdateTime())
         .build();
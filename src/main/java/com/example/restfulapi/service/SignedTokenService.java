@@ -0,0 +1,219 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.config.TokenSessionConfig;
+import com.example.restfulapi.constant.TokenMode;
+import com.example.restfulapi.repository.RevokedTokenRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * サブジェクト、発行時刻、有効期限を含みHMAC-SHA256で署名したアクセストークンを発行、検証するServiceクラス
+ *
+ * <p>トークンの形式は「base64url(トークンid:サブジェクト:発行時刻:有効期限).base64url(署名)」とする。検証は署名と有効期限の確認のみでDBを参照しないため、APIノードを追加してもDBの負荷は増えない。失効させたトークンはidを有効期限まで保持する失効リストで拒否する
+ *
+ * <p>失効リストは検証のたびにDBを参照しないようノードごとのメモリに保持し、失効はrevoked_tokenテーブルを通じて全ノードで共有する。他ノードでの失効はtoken.revocationSyncIntervalMillisごとの取り込みで反映されるため、それまでの間は他ノードで有効なままとなる
+ *
+ * @author Natsume Takuya
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SignedTokenService {
+
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int MIN_SECRET_BYTES = 32;
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+  private static final int SYNC_BATCH_SIZE = 1000;
+  /** 取得済みのidより前にコミットされる行を取りこぼさないよう、取得し直すidの幅 */
+  private static final long SYNC_OVERLAP = 100;
+  private static final int EXPIRY_CHUNK_SIZE = 1000;
+
+  private final TokenSessionConfig tokenSessionConfig;
+  private final RevokedTokenRepository revokedTokenRepository;
+
+  /** 失効させたトークンのidとその有効期限(epoch秒) */
+  private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+  /** revoked_tokenテーブルから取り込み済みの最後のid */
+  private long lastRevokedId;
+
+  private ThreadLocal<Mac> mac;
+
+  /** signed方式の場合に秘密鍵を検証し、署名の準備と失効リストの読み込みを行う */
+  @PostConstruct
+  public void init() {
+    if (tokenSessionConfig.getMode() != TokenMode.SIGNED) {
+      return;
+    }
+    String secret = tokenSessionConfig.getSecret();
+    if (secret == null || secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_BYTES) {
+      throw new IllegalStateException(
+          "token.secret must be at least " + MIN_SECRET_BYTES + " bytes in signed mode");
+    }
+    SecretKeySpec key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    // Macはスレッドセーフでないため、スレッドごとに初期化済みのインスタンスを用いる
+    mac =
+        ThreadLocal.withInitial(
+            () -> {
+              try {
+                Mac instance = Mac.getInstance(ALGORITHM);
+                instance.init(key);
+                return instance;
+              } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+              }
+            });
+    log.warn(
+        "signed方式では、他ノードでのトークンの失効は最大{}ミリ秒遅れて反映されます",
+        tokenSessionConfig.getRevocationSyncIntervalMillis());
+    syncRevokedTokens();
+  }
+
+  /**
+   * 署名付きトークンを発行する
+   *
+   * @param subject トークンの利用者
+   * @return String 署名付きトークン
+   */
+  public String issue(String subject) {
+    Instant issuedAt = Instant.now();
+    Instant expiresAt = issuedAt.plus(tokenSessionConfig.getBoarderLine(), ChronoUnit.MINUTES);
+    String payload =
+        String.join(
+            ":",
+            UUID.randomUUID().toString(),
+            subject,
+            String.valueOf(issuedAt.getEpochSecond()),
+            String.valueOf(expiresAt.getEpochSecond()));
+    String encodedPayload = ENCODER.encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+    return encodedPayload + "." + ENCODER.encodeToString(sign(encodedPayload));
+  }
+
+  /**
+   * トークンの署名と有効期限を検証する
+   *
+   * @param token 検証対象のトークン
+   * @return Optional<String> トークンのサブジェクト。署名が不正、有効期限切れ、あるいは失効している場合はempty
+   */
+  public Optional<String> verify(String token) {
+    String[] claims = decode(token);
+    if (claims == null
+        || Long.parseLong(claims[3]) <= Instant.now().getEpochSecond()
+        || revokedTokens.containsKey(claims[0])) {
+      return Optional.empty();
+    }
+    return Optional.of(claims[1]);
+  }
+
+  /**
+   * トークンを失効させる。自ノードの失効リストには即座に加え、他ノードにはrevoked_tokenテーブルを通じて反映する
+   *
+   * @param token 失効させるトークン
+   */
+  public void revoke(String token) {
+    String[] claims = decode(token);
+    if (claims == null) {
+      return;
+    }
+    long expiresAt = Long.parseLong(claims[3]);
+    revokedTokens.put(claims[0], expiresAt);
+    revokedTokenRepository.insert(claims[0], expiresAt);
+  }
+
+  /** 他ノードで失効させたトークンをrevoked_tokenテーブルから取り込み、有効期限の切れたものを失効リストから除く */
+  @Scheduled(fixedDelayString = "${token.revocationSyncIntervalMillis:5000}")
+  public synchronized void syncRevokedTokens() {
+    if (mac == null) {
+      return;
+    }
+    long now = Instant.now().getEpochSecond();
+    revokedTokens.values().removeIf(expiresAt -> expiresAt <= now);
+    long from = Math.max(lastRevokedId - SYNC_OVERLAP, 0);
+    List<Object[]> rows;
+    do {
+      rows = revokedTokenRepository.findAfter(from, now, SYNC_BATCH_SIZE);
+      for (Object[] row : rows) {
+        revokedTokens.put((String) row[1], (Long) row[2]);
+        from = (Long) row[0];
+      }
+    } while (rows.size() == SYNC_BATCH_SIZE);
+    lastRevokedId = Math.max(lastRevokedId, from);
+  }
+
+  /**
+   * 有効期限の切れた失効トークンをrevoked_tokenテーブルから削除する
+   *
+   * @return int 削除件数
+   */
+  public int deleteExpiredRevocations() {
+    long now = Instant.now().getEpochSecond();
+    int total = 0;
+    int count;
+    do {
+      count = revokedTokenRepository.deleteExpired(now, EXPIRY_CHUNK_SIZE);
+      total += count;
+    } while (count == EXPIRY_CHUNK_SIZE);
+    return total;
+  }
+
+  /**
+   * 署名を検証し、トークンに含まれる値を取り出す
+   *
+   * @param token 対象のトークン
+   * @return String[] トークンid、サブジェクト、発行時刻、有効期限。不正なトークンの場合はnull
+   */
+  private String[] decode(String token) {
+    if (mac == null || token == null) {
+      return null;
+    }
+    int separator = token.indexOf('.');
+    if (separator <= 0) {
+      return null;
+    }
+    String encodedPayload = token.substring(0, separator);
+    try {
+      byte[] signature = DECODER.decode(token.substring(separator + 1));
+      // 署名の比較は一致するバイト数によらず一定時間で行う
+      if (!MessageDigest.isEqual(sign(encodedPayload), signature)) {
+        return null;
+      }
+      String[] claims =
+          new String(DECODER.decode(encodedPayload), StandardCharsets.UTF_8).split(":", -1);
+      if (claims.length != 4) {
+        return null;
+      }
+      Long.parseLong(claims[3]);
+      return claims;
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+  }
+
+  /**
+   * 値をHMAC-SHA256で署名する
+   *
+   * @param value 署名対象の値
+   * @return byte[] 署名
+   */
+  private byte[] sign(String value) {
+    return mac.get().doFinal(value.getBytes(StandardCharsets.US_ASCII));
+  }
+}
@@ -0,0 +1,116 @@
+package com.example.restfulapi.storage;
+
+import com.example.restfulapi.cache.ByteBufferResource;
+import com.example.restfulapi.cache.ImageCache;
+import com.example.restfulapi.config.PathConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+/**
+ * 画像実体を1画像1ファイルとして保存するストレージクラス
+ *
+ * <p>1ディレクトリのファイル数を抑えるため、ハッシュの先頭2文字でディレクトリを分ける。よく参照される画像はImageCacheに保持する
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConditionalOnProperty(
+    prefix = "storage.image",
+    name = "type",
+    havingValue = "filesystem",
+    matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class FileSystemImageStorage implements ImageStorage {
+
+  private static final String BLOB_DIRECTORY = "blobs";
+
+  private final PathConfig pathConfig;
+  private final ImageCache imageCache;
+
+  @Override
+  public boolean exists(String hash) {
+    return Files.exists(resolve(hash));
+  }
+
+  @Override
+  public void store(String hash, Path file) throws IOException {
+    Path pathToBlob = resolve(hash);
+    try {
+      if (!Files.exists(pathToBlob)) {
+        // 一時ファイルは同一ファイルシステム上にあるため、コピーせずに移動する
+        Files.createDirectories(pathToBlob.getParent());
+        Files.move(file, pathToBlob, StandardCopyOption.ATOMIC_MOVE);
+      }
+    } catch (FileAlreadyExistsException ex) {
+      // 同一内容の画像が同時にアップロードされた場合は先に保存された実体を用いる
+      log.debug("画像実体はすでに保存されています : {}", hash);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Override
+  public Resource load(String hash, String fileName) throws IOException {
+    Path pathToBlob = resolve(hash);
+    if (!Files.isReadable(pathToBlob)) {
+      throw new FileNotFoundException(fileName);
+    }
+    Optional<ByteBuffer> cachedImage = imageCache.get(hash, pathToBlob);
+    return cachedImage.isPresent()
+        ? new ByteBufferResource(cachedImage.get(), fileName)
+        : new FileSystemResource(pathToBlob);
+  }
+
+  @Override
+  public void delete(String hash) throws IOException {
+    // 削除前に読み込みを始めた画像が再格納されないよう、ファイルの削除後に追い出す
+    Files.deleteIfExists(resolve(hash));
+    imageCache.evict(hash);
+  }
+
+  /**
+   * 画像実体のファイルまでのpathを取得する
+   *
+   * @param hash 画像のSHA-256
+   * @return Path 画像実体のファイルまでのpath
+   */
+  private Path resolve(String hash) {
+    return resolve(pathConfig, hash);
+  }
+
+  /**
+   * 画像実体のファイルまでのpathを取得する。他の保存方式から保存済みの画像を参照する場合にも用いる
+   *
+   * @param pathConfig 画像ディレクトリの設定
+   * @param hash 画像のSHA-256
+   * @return Path 画像実体のファイルまでのpath
+   */
+  static Path resolve(PathConfig pathConfig, String hash) {
+    return resolveBlobDirectory(pathConfig).resolve(hash.substring(0, 2)).resolve(hash);
+  }
+
+  /**
+   * 画像実体を保存するディレクトリまでのpathを取得する
+   *
+   * @param pathConfig 画像ディレクトリの設定
+   * @return Path 画像実体を保存するディレクトリまでのpath
+   */
+  static Path resolveBlobDirectory(PathConfig pathConfig) {
+    return Paths.get(pathConfig.getImage(), BLOB_DIRECTORY);
+  }
+}
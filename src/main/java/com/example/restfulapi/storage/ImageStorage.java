@@ -0,0 +1,51 @@
+package com.example.restfulapi.storage;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 画像実体をSHA-256をキーとして保存するストレージのインターフェース
+ *
+ * <p>実装はapplication.ymlのstorage.image.typeで選択する
+ *
+ * @author Natsume Takuya
+ */
+public interface ImageStorage {
+
+  /**
+   * 画像実体が保存されているか判定する
+   *
+   * @param hash 画像のSHA-256
+   * @return boolean 保存されていればtrue
+   */
+  boolean exists(String hash);
+
+  /**
+   * 一時ファイルに書き込まれた画像を画像実体として保存する。一時ファイルは保存後に残らない
+   *
+   * @param hash 画像のSHA-256
+   * @param file 画像を書き込んだ一時ファイル
+   * @throws IOException 書き込み時の例外を投げるIOExceptionクラス
+   */
+  void store(String hash, Path file) throws IOException;
+
+  /**
+   * 画像実体を読み込む
+   *
+   * @param hash 画像のSHA-256
+   * @param fileName レスポンスに用いるファイル名
+   * @return Resource 画像の内容
+   * @throws IOException 画像実体が存在しない場合はFileNotFoundException
+   */
+  Resource load(String hash, String fileName) throws IOException;
+
+  /**
+   * 画像実体を削除する
+   *
+   * @param hash 画像のSHA-256
+   * @throws IOException 削除時の例外を投げるIOExceptionクラス
+   */
+  void delete(String hash) throws IOException;
+}
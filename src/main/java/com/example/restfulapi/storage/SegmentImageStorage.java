@@ -0,0 +1,723 @@
+package com.example.restfulapi.storage;
+
+import com.example.restfulapi.cache.ByteBufferResource;
+import com.example.restfulapi.config.ImageStorageConfig;
+import com.example.restfulapi.config.PathConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 画像実体を大きなセグメントファイルへ追記して保存するストレージクラス
+ *
+ * <p>画像ごとのファイル、ディレクトリを作らないため、画像数が増えてもinode数やディレクトリ操作のコストが増えない。画像の位置(セグメント、オフセット、バイト数)はメモリ上のインデックスで管理し、起動時にセグメントを走査して復元する。読み込みはメモリマップしたセグメントのスライスを返すため、ヒープへのコピーは発生しない。削除された画像の領域はバックグラウンドのコンパクションで回収する
+ *
+ * <p>filesystem方式から切り替えた場合、1画像1ファイルで保存済みの画像は起動後にバックグラウンドでセグメントへ取り込む。取り込みが終わるまではファイルから読み込む
+ *
+ * <p>各レコードは[マジックナンバー(4)][種別(1)][SHA-256(64)][バイト数(4)][画像]の形式で、削除は墓標レコードの追記で表す
+ *
+ * <p>画像の追記は、ロックの中でレコードの領域を確保して確定前(PENDING)のヘッダーを書き込み、画像の転送と同期はロックの外で行う。同期の完了後に種別をDATAへ書き換えて再度同期し、インデックスへ公開する。同時に追記するスレッドの同期は1回のforceにまとめる。確定前のレコードは起動時の走査で読み飛ばすため、書き込みの途中で停止しても後続のレコードは失われない
+ *
+ * @author Natsume Takuya
+ */
+@Component
+@ConditionalOnProperty(prefix = "storage.image", name = "type", havingValue = "segment")
+@RequiredArgsConstructor
+@Slf4j
+public class SegmentImageStorage implements ImageStorage {
+
+  private static final String SEGMENT_DIRECTORY = "segments";
+  private static final Pattern SEGMENT_FILE_PATTERN = Pattern.compile("([0-9]+)\\.seg");
+  private static final int RECORD_MAGIC = 0x494d4731;
+  private static final byte TYPE_DATA = 1;
+  private static final byte TYPE_TOMBSTONE = 2;
+  private static final byte TYPE_PENDING = 3;
+  private static final int TYPE_OFFSET = 4;
+  private static final int HASH_LENGTH = 64;
+  private static final int HEADER_LENGTH = 4 + 1 + HASH_LENGTH + 4;
+
+  private final PathConfig pathConfig;
+  private final ImageStorageConfig imageStorageConfig;
+
+  private final Map<String, Location> locations = new ConcurrentHashMap<>();
+  private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+  private volatile Segment activeSegment;
+  private final ScheduledExecutorService executor =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "image-segment-compactor");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /**
+   * 既存のセグメントを走査してインデックスを復元し、保存済みファイルの取り込みとコンパクションを専用のスレッドで開始する
+   *
+   * @throws IOException セグメント読み込み時の例外を投げるIOExceptionクラス
+   */
+  @PostConstruct
+  public synchronized void open() throws IOException {
+    if (imageStorageConfig.getSegmentMaxBytes() > Integer.MAX_VALUE) {
+      throw new IllegalStateException("storage.image.segmentMaxBytesは2GB未満で指定してください");
+    }
+    Path segmentDirectory = Paths.get(pathConfig.getImage(), SEGMENT_DIRECTORY);
+    Files.createDirectories(segmentDirectory);
+
+    List<Integer> segmentIds = new ArrayList<>();
+    try (Stream<Path> files = Files.list(segmentDirectory)) {
+      files.forEach(
+          file -> {
+            Matcher matcher = SEGMENT_FILE_PATTERN.matcher(file.getFileName().toString());
+            if (matcher.matches()) {
+              segmentIds.add(Integer.valueOf(matcher.group(1)));
+            }
+          });
+    }
+    segmentIds.sort(Integer::compareTo);
+
+    // 後に書かれたレコードほど新しいため、セグメント番号、オフセットの昇順で適用する
+    for (int segmentId : segmentIds) {
+      Segment segment = openSegment(segmentId);
+      segments.put(segmentId, segment);
+      recover(segment);
+    }
+    for (Map.Entry<String, Location> entry : locations.entrySet()) {
+      Location location = entry.getValue();
+      segments
+          .get(location.getSegmentId())
+          .liveBytes
+          .addAndGet(HEADER_LENGTH + location.getLength());
+    }
+
+    activeSegment = segments.isEmpty() ? createSegment(0) : segments.lastEntry().getValue();
+    log.info("画像セグメントを読み込みました : {}セグメント、{}件", segments.size(), locations.size());
+
+    // 共有のスケジューラースレッドを長時間占有しないよう、取り込みとコンパクションは専用のスレッドで行う
+    long interval = imageStorageConfig.getCompactionIntervalMillis();
+    executor.execute(this::importFileSystemBlobs);
+    executor.scheduleWithFixedDelay(this::compact, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * コンパクションを停止し、セグメントのFileChannelを閉じる
+   *
+   * @throws InterruptedException 停止待ちの間に割り込まれた場合の例外
+   */
+  @PreDestroy
+  public void close() throws InterruptedException {
+    // 割り込むとFileChannelが閉じられるため、実行中の処理は割り込まずに待つ
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+    synchronized (this) {
+      for (Segment segment : segments.values()) {
+        try {
+          segment.close();
+        } catch (IOException ex) {
+          log.warn("セグメントのクローズに失敗しました : {}", segment.path, ex);
+        }
+      }
+    }
+  }
+
+  @Override
+  public boolean exists(String hash) {
+    return locations.containsKey(hash)
+        || Files.exists(FileSystemImageStorage.resolve(pathConfig, hash));
+  }
+
+  @Override
+  public void store(String hash, Path file) throws IOException {
+    try {
+      append(hash, file);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * ファイルの内容をDATAレコードとしてアクティブセグメントへ追記する。保存済みの場合は何もしない
+   *
+   * @param hash 画像のSHA-256
+   * @param file 追記する画像ファイル
+   * @throws IOException 読み書き時の例外を投げるIOExceptionクラス
+   */
+  private void append(String hash, Path file) throws IOException {
+    try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = source.size();
+      if (size > imageStorageConfig.getSegmentMaxBytes() - HEADER_LENGTH) {
+        throw new IOException("セグメントに格納できない大きさの画像です : " + size);
+      }
+      Segment segment;
+      long offset;
+      synchronized (this) {
+        if (locations.containsKey(hash)) {
+          return;
+        }
+        segment = prepareActiveSegment(HEADER_LENGTH + size);
+        offset = segment.size;
+        // sizeはヘッダーの書き込み後に進めるため、失敗した場合の書きかけのヘッダーは次の書き込みで上書きされる
+        writeFully(segment.channel, createHeader(TYPE_PENDING, hash, (int) size), offset);
+        segment.size = offset + HEADER_LENGTH + size;
+        segment.writers++;
+      }
+      try {
+        // 失敗した場合、確保した領域は確定前のレコードとして読み飛ばされる
+        transferFully(source, 0, size, segment.channel, offset + HEADER_LENGTH);
+        segment.force();
+        commit(hash, segment, offset, (int) size).force();
+      } finally {
+        synchronized (this) {
+          segment.writers--;
+        }
+      }
+    }
+  }
+
+  /**
+   * 画像の転送と同期が完了したレコードを確定し、インデックスへ公開する
+   *
+   * <p>同じ画像が並行して追記された場合は先に確定した方のみを用い、このレコードは確定前のまま残す
+   *
+   * @param hash 画像のSHA-256
+   * @param segment レコードを追記したセグメント
+   * @param offset レコードの開始位置
+   * @param length 画像のバイト数
+   * @return Segment 公開した画像を保持するセグメント。呼び出し元はこのセグメントを同期してから完了とする
+   * @throws IOException 書き込み時の例外を投げるIOExceptionクラス
+   */
+  private synchronized Segment commit(String hash, Segment segment, long offset, int length)
+      throws IOException {
+    Location location = locations.get(hash);
+    if (location != null) {
+      return segments.get(location.getSegmentId());
+    }
+    writeFully(segment.channel, ByteBuffer.wrap(new byte[] {TYPE_DATA}), offset + TYPE_OFFSET);
+    segment.liveBytes.addAndGet(HEADER_LENGTH + length);
+    locations.put(hash, new Location(segment.id, offset + HEADER_LENGTH, length));
+    return segment;
+  }
+
+  @Override
+  public Resource load(String hash, String fileName) throws IOException {
+    Resource resource = loadFromSegment(hash, fileName);
+    if (resource != null) {
+      return resource;
+    }
+    try {
+      // 取り込み前の画像はファイルから読み込む。取り込み中に削除されても読み終えられるよう、ヒープへ読み込む
+      byte[] image = Files.readAllBytes(FileSystemImageStorage.resolve(pathConfig, hash));
+      return new ByteBufferResource(ByteBuffer.wrap(image), fileName);
+    } catch (NoSuchFileException ex) {
+      // ファイルを確認する間に取り込まれた場合はセグメントから読み込む
+      resource = loadFromSegment(hash, fileName);
+      if (resource == null) {
+        throw new FileNotFoundException(fileName);
+      }
+      return resource;
+    }
+  }
+
+  /**
+   * セグメントから画像を読み込む
+   *
+   * @param hash 画像のSHA-256
+   * @param fileName Resourceの説明に用いるファイル名
+   * @return Resource 画像のResource。セグメントに保存されていない場合はnull
+   * @throws IOException マッピング時の例外を投げるIOExceptionクラス
+   */
+  private Resource loadFromSegment(String hash, String fileName) throws IOException {
+    // コンパクションで移動、クローズされた直後の場合は移動先を参照し直す
+    for (int attempt = 0; attempt < 3; attempt++) {
+      Location location = locations.get(hash);
+      if (location == null) {
+        return null;
+      }
+      Segment segment = segments.get(location.getSegmentId());
+      ByteBuffer slice =
+          segment == null ? null : segment.slice(location.getOffset(), location.getLength());
+      if (slice != null) {
+        return new ByteBufferResource(slice, fileName);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized void delete(String hash) throws IOException {
+    Files.deleteIfExists(FileSystemImageStorage.resolve(pathConfig, hash));
+    Location location = locations.remove(hash);
+    if (location == null) {
+      return;
+    }
+    Segment segment = segments.get(location.getSegmentId());
+    if (segment != null) {
+      segment.liveBytes.addAndGet(-(HEADER_LENGTH + location.getLength()));
+      segment.deadHashes.add(hash);
+    }
+    appendTombstone(hash);
+  }
+
+  /** filesystem方式で保存された画像をセグメントへ取り込み、元のファイルを削除する */
+  void importFileSystemBlobs() {
+    Path blobDirectory = FileSystemImageStorage.resolveBlobDirectory(pathConfig);
+    if (!Files.isDirectory(blobDirectory)) {
+      return;
+    }
+    List<Path> files;
+    try (Stream<Path> paths = Files.walk(blobDirectory, 2)) {
+      files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    } catch (IOException ex) {
+      log.error("取り込む画像の一覧を取得できませんでした : {}", blobDirectory, ex);
+      return;
+    }
+
+    int imported = 0;
+    for (Path file : files) {
+      if (executor.isShutdown()) {
+        return;
+      }
+      String hash = file.getFileName().toString();
+      if (hash.length() != HASH_LENGTH) {
+        continue;
+      }
+      try {
+        // 取り込みと削除が入れ替わって削除済みの画像を復活させないよう、削除と同じロックの中で行う
+        synchronized (this) {
+          if (!locations.containsKey(hash) && Files.exists(file)) {
+            append(hash, file);
+            imported++;
+          }
+          Files.deleteIfExists(file);
+        }
+      } catch (IOException ex) {
+        log.error("画像をセグメントへ取り込めませんでした : {}", file, ex);
+      }
+    }
+    log.info("保存済みの画像をセグメントへ取り込みました : {}件", imported);
+  }
+
+  /** 有効なデータの割合が閾値を下回ったセグメントの有効なレコードを書き写し、セグメントを削除する */
+  public void compact() {
+    for (Segment segment : new ArrayList<>(segments.values())) {
+      // アクティブでないセグメントに新たな追記は行われないため、追記中の件数は増えない
+      if (segment == activeSegment
+          || segment.writers > 0
+          || segment.liveBytes.get()
+              >= segment.size * imageStorageConfig.getCompactionThreshold()) {
+        continue;
+      }
+      try {
+        compact(segment);
+      } catch (IOException ex) {
+        log.error("セグメントのコンパクションに失敗しました : {}", segment.path, ex);
+      }
+    }
+  }
+
+  /**
+   * セグメントの有効なレコードをアクティブセグメントへ書き写し、元のセグメントを削除する
+   *
+   * <p>読み込み中のスライスはマッピングが解放されるまで参照できるため、読み込みは停止しない。墓標は、より古いセグメントに削除済みのDATAレコードが残っている場合のみ引き継ぐ
+   *
+   * @param segment コンパクション対象のセグメント
+   * @throws IOException 読み書き時の例外を投げるIOExceptionクラス
+   */
+  private void compact(Segment segment) throws IOException {
+    log.info("セグメントのコンパクションを開始します : {}", segment.path);
+    // 末尾の追記に失敗した場合、ファイルは確保した領域より短い
+    long end = Math.min(segment.size, segment.channel.size());
+    ByteBuffer records = segment.slice(0, end);
+    long offset = 0;
+    while (offset + HEADER_LENGTH <= end) {
+      records.position((int) offset);
+      records.getInt();
+      byte type = records.get();
+      byte[] hashBytes = new byte[HASH_LENGTH];
+      records.get(hashBytes);
+      String hash = new String(hashBytes, StandardCharsets.US_ASCII);
+      int length = records.getInt();
+      long dataOffset = offset + HEADER_LENGTH;
+      if (dataOffset + length > end) {
+        break;
+      }
+
+      // レコードごとにロックを取得し、コンパクション中も登録、削除を止めない
+      synchronized (this) {
+        Location location = locations.get(hash);
+        if (type == TYPE_DATA
+            && location != null
+            && location.getSegmentId() == segment.id
+            && location.getOffset() == dataOffset) {
+          Segment target = prepareActiveSegment(HEADER_LENGTH + length);
+          long targetOffset = target.size;
+          writeFully(target.channel, createHeader(TYPE_DATA, hash, length), targetOffset);
+          transferFully(
+              segment.channel, dataOffset, length, target.channel, targetOffset + HEADER_LENGTH);
+          target.size = targetOffset + HEADER_LENGTH + length;
+          target.liveBytes.addAndGet(HEADER_LENGTH + length);
+          locations.put(hash, new Location(target.id, targetOffset + HEADER_LENGTH, length));
+        } else if (type == TYPE_TOMBSTONE
+            && !locations.containsKey(hash)
+            && holdsDeadRecord(hash, segment.id)) {
+          appendTombstone(hash);
+        }
+      }
+      offset = dataOffset + length;
+    }
+
+    synchronized (this) {
+      activeSegment.channel.force(false);
+      segments.remove(segment.id);
+      segment.close();
+      Files.delete(segment.path);
+    }
+    log.info("セグメントのコンパクションが完了しました : {}", segment.path);
+  }
+
+  /**
+   * セグメントのレコードを先頭から走査してインデックスへ反映する。末尾に書きかけのレコードがある場合は切り詰める
+   *
+   * @param segment 走査対象のセグメント
+   * @throws IOException 読み込み時の例外を投げるIOExceptionクラス
+   */
+  private void recover(Segment segment) throws IOException {
+    long fileSize = segment.channel.size();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    long offset = 0;
+    while (offset + HEADER_LENGTH <= fileSize) {
+      header.clear();
+      readFully(segment.channel, header, offset);
+      header.flip();
+      int magic = header.getInt();
+      byte type = header.get();
+      byte[] hashBytes = new byte[HASH_LENGTH];
+      header.get(hashBytes);
+      int length = header.getInt();
+      if (magic != RECORD_MAGIC
+          || (type != TYPE_DATA && type != TYPE_TOMBSTONE && type != TYPE_PENDING)
+          || length < 0
+          || offset + HEADER_LENGTH + length > fileSize) {
+        break;
+      }
+      if (type == TYPE_PENDING) {
+        offset += HEADER_LENGTH + length;
+        continue;
+      }
+
+      String hash = new String(hashBytes, StandardCharsets.US_ASCII);
+      Location previous =
+          type == TYPE_DATA
+              ? locations.put(hash, new Location(segment.id, offset + HEADER_LENGTH, length))
+              : locations.remove(hash);
+      if (previous != null) {
+        segments.get(previous.getSegmentId()).deadHashes.add(hash);
+      }
+      offset += HEADER_LENGTH + length;
+    }
+
+    if (offset < fileSize) {
+      log.warn("書きかけのレコードを切り詰めます : {} offset={}", segment.path, offset);
+      segment.channel.truncate(offset);
+    }
+    segment.size = offset;
+  }
+
+  /**
+   * 指定したセグメントより古いセグメントに、削除済みのDATAレコードが残っているかを判定する
+   *
+   * @param hash 画像のSHA-256
+   * @param segmentId 墓標を含むセグメントの番号
+   * @return boolean 残っている場合はtrue
+   */
+  private boolean holdsDeadRecord(String hash, int segmentId) {
+    return segments.headMap(segmentId).values().stream()
+        .anyMatch(segment -> segment.deadHashes.contains(hash));
+  }
+
+  /**
+   * 削除を表す墓標レコードをアクティブセグメントへ追記する
+   *
+   * @param hash 削除された画像のSHA-256
+   * @throws IOException 書き込み時の例外を投げるIOExceptionクラス
+   */
+  private void appendTombstone(String hash) throws IOException {
+    Segment segment = prepareActiveSegment(HEADER_LENGTH);
+    writeFully(segment.channel, createHeader(TYPE_TOMBSTONE, hash, 0), segment.size);
+    segment.size += HEADER_LENGTH;
+  }
+
+  /**
+   * レコードを追記するアクティブセグメントを取得する。上限を超える場合は新しいセグメントに切り替える
+   *
+   * @param recordLength 追記するレコードのバイト数
+   * @return Segment アクティブセグメント
+   * @throws IOException セグメント作成時の例外を投げるIOExceptionクラス
+   */
+  private Segment prepareActiveSegment(long recordLength) throws IOException {
+    if (activeSegment.size > 0
+        && activeSegment.size + recordLength > imageStorageConfig.getSegmentMaxBytes()) {
+      activeSegment.channel.force(false);
+      activeSegment = createSegment(activeSegment.id + 1);
+    }
+    return activeSegment;
+  }
+
+  /**
+   * 新しいセグメントを作成する
+   *
+   * @param segmentId セグメント番号
+   * @return Segment 作成したセグメント
+   * @throws IOException ファイル作成時の例外を投げるIOExceptionクラス
+   */
+  private Segment createSegment(int segmentId) throws IOException {
+    Segment segment = openSegment(segmentId);
+    segments.put(segmentId, segment);
+    return segment;
+  }
+
+  /**
+   * セグメントファイルを開く
+   *
+   * @param segmentId セグメント番号
+   * @return Segment 開いたセグメント
+   * @throws IOException ファイル読み込み時の例外を投げるIOExceptionクラス
+   */
+  private Segment openSegment(int segmentId) throws IOException {
+    Path path = Paths.get(pathConfig.getImage(), SEGMENT_DIRECTORY, segmentId + ".seg");
+    FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    return new Segment(segmentId, path, channel);
+  }
+
+  /**
+   * レコードのヘッダーを生成する
+   *
+   * @param type レコードの種別
+   * @param hash 画像のSHA-256
+   * @param length 画像のバイト数
+   * @return ByteBuffer 書き込み可能な状態のヘッダー
+   */
+  private ByteBuffer createHeader(byte type, String hash, int length) {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    header.putInt(RECORD_MAGIC).put(type).put(hash.getBytes(StandardCharsets.US_ASCII));
+    header.putInt(length);
+    header.flip();
+    return header;
+  }
+
+  /**
+   * バッファの内容を全て指定位置へ書き込む
+   *
+   * @param channel 書き込み先のFileChannel
+   * @param buffer 書き込む内容
+   * @param position 書き込み開始位置
+   * @throws IOException 書き込み時の例外を投げるIOExceptionクラス
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  /**
+   * FileChannel間で指定したバイト数を全て転送する
+   *
+   * @param source 転送元のFileChannel
+   * @param sourcePosition 転送元の開始位置
+   * @param length 転送するバイト数
+   * @param target 転送先のFileChannel
+   * @param targetPosition 転送先の開始位置
+   * @throws IOException 転送時の例外を投げるIOExceptionクラス
+   */
+  private static void transferFully(
+      FileChannel source, long sourcePosition, long length, FileChannel target, long targetPosition)
+      throws IOException {
+    long transferred = 0;
+    while (transferred < length) {
+      long count =
+          source.transferTo(
+              sourcePosition + transferred,
+              length - transferred,
+              target.position(targetPosition + transferred));
+      if (count <= 0) {
+        throw new IOException("転送元の末尾に到達しました");
+      }
+      transferred += count;
+    }
+  }
+
+  /**
+   * 指定位置からバッファが埋まるまで読み込む
+   *
+   * @param channel 読み込み元のFileChannel
+   * @param buffer 読み込み先のバッファ
+   * @param position 読み込み開始位置
+   * @throws IOException 読み込み時の例外を投げるIOExceptionクラス
+   */
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int count = channel.read(buffer, position);
+      if (count < 0) {
+        throw new IOException("セグメントの末尾に到達しました");
+      }
+      position += count;
+    }
+  }
+
+  /** 画像のセグメント内の位置 */
+  @Value
+  private static class Location {
+    int segmentId;
+    long offset;
+    int length;
+  }
+
+  /** 1つのセグメントファイル */
+  private static class Segment {
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final AtomicLong liveBytes = new AtomicLong();
+    /** このセグメント内のDATAレコードのうち、削除または上書きされたもののハッシュ */
+    private final Set<String> deadHashes = ConcurrentHashMap.newKeySet();
+    /** 確保した領域の末尾。SegmentImageStorageのロックの中で更新する */
+    private volatile long size;
+    /** 領域を確保してから確定するまでの追記の件数。SegmentImageStorageのロックの中で更新する */
+    private volatile int writers;
+    private MappedByteBuffer mapped;
+    private volatile boolean closed;
+
+    private final Object forceMonitor = new Object();
+    /** forceの要求ごとに採番する番号 */
+    private long forceRequested;
+    /** 同期が完了した要求の番号 */
+    private long forceCompleted;
+    private boolean forcing;
+
+    private Segment(int id, Path path, FileChannel channel) {
+      this.id = id;
+      this.path = path;
+      this.channel = channel;
+    }
+
+    /**
+     * セグメントの指定範囲をメモリマップから切り出す。追記で範囲がマッピングを超えた場合は再マップする
+     *
+     * @param offset 開始位置
+     * @param length バイト数
+     * @return ByteBuffer 読み込み専用のスライス。コンパクションでクローズ済みの場合はnull
+     * @throws IOException マッピング時の例外を投げるIOExceptionクラス
+     */
+    private ByteBuffer slice(long offset, long length) throws IOException {
+      MappedByteBuffer buffer;
+      synchronized (this) {
+        if (closed) {
+          return null;
+        }
+        if (mapped == null || mapped.capacity() < offset + length) {
+          // 確保のみで書き込み前の領域までマップするとファイルが伸びるため、ファイルの大きさまでとする
+          mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, channel.size()));
+        }
+        buffer = mapped;
+      }
+      ByteBuffer slice = buffer.duplicate();
+      slice.position((int) offset);
+      slice.limit((int) (offset + length));
+      return slice.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 書き込み済みの内容をディスクへ同期する。同時に呼び出したスレッドの同期は1回のforceにまとめる
+     *
+     * <p>forceの実行中に呼び出したスレッドは、その完了を待ってから、待機中の要求をまとめて次のforceで同期する
+     *
+     * @throws IOException 同期時の例外を投げるIOExceptionクラス
+     */
+    private void force() throws IOException {
+      long covered;
+      synchronized (forceMonitor) {
+        long ticket = ++forceRequested;
+        while (forcing && forceCompleted < ticket) {
+          try {
+            forceMonitor.wait();
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("セグメントの同期待ちの間に割り込まれました");
+          }
+        }
+        if (forceCompleted >= ticket) {
+          return;
+        }
+        // forceの開始前に要求したスレッドの書き込みは、全てこのforceで同期される
+        forcing = true;
+        covered = forceRequested;
+      }
+      boolean completed = false;
+      try {
+        channel.force(false);
+        completed = true;
+      } catch (ClosedChannelException ex) {
+        // コンパクションで削除されたセグメントの画像は、同期済みの移動先から読み込まれる
+        if (!closed) {
+          throw ex;
+        }
+        completed = true;
+      } finally {
+        synchronized (forceMonitor) {
+          forcing = false;
+          if (completed) {
+            forceCompleted = covered;
+          }
+          forceMonitor.notifyAll();
+        }
+      }
+    }
+
+    /**
+     * FileChannelを閉じる。マッピング中のスレッドがあれば完了を待つ
+     *
+     * @throws IOException クローズ時の例外を投げるIOExceptionクラス
+     */
+    private synchronized void close() throws IOException {
+      closed = true;
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.example.restfulapi.storage;
+
+import com.example.restfulapi.constant.AcceptedSuffixes;
+import lombok.Value;
+
+import java.nio.file.Path;
+
+/**
+ * 受信を終え、一時ファイルに書き込まれた画像
+ *
+ * @author Natsume Takuya
+ */
+@Value
+public class UploadedImage {
+
+  /** 画像のSHA-256 */
+  String hash;
+
+  /** 先頭バイトから判定した拡張子 */
+  AcceptedSuffixes suffix;
+
+  /** 画像のバイト数 */
+  long size;
+
+  /** 画像を書き込んだ一時ファイル */
+  Path file;
+
+  /**
+   * 画像のファイル名を取得する
+   *
+   * @return String SHA-256と拡張子からなるファイル名
+   */
+  public String getFileName() {
+    return hash + "." + suffix;
+  }
+}
@@ -2,26 +2,48 @@ create table if not exists products
 (
     id          bigint unsigned primary key auto_increment comment '商品id',
     title       varchar(100) not null unique key comment '商品タイトル',
+    title_normalized text character set utf8mb4 collate utf8mb4_bin comment 'titleインデックスと同じ規則で正規化したtitle。LIKE検索に用いる',
     description varchar(500) not null comment '商品説明文',
     price       int unsigned not null comment '商品価格',
     image_path  text comment '商品画像パス',
+    version     bigint unsigned not null default 0 comment '楽観ロック用バージョン',
     create_time datetime     not null default current_timestamp comment '作成日時',
-    update_time datetime     not null default current_timestamp on update current_timestamp comment '更新日時'
+    update_time datetime     not null default current_timestamp on update current_timestamp comment '更新日時',
+    index idx_products_update_time_id (update_time, id)
 )
     default charset = utf8mb4
     comment '商品テーブル';
 
 
+create table if not exists catalog_version
+(
+    id      tinyint unsigned primary key comment '常に1',
+    version bigint unsigned not null default 0 comment 'Product一覧のETagに用いるバージョン'
+)
+    default charset = utf8mb4
+    comment 'カタログバージョンテーブル';
+
 create table if not exists access_token
 (
     id           bigint unsigned primary key auto_increment comment 'アクセストークンid',
     access_token char(48) not null unique key comment 'アクセストークン',
     create_time  datetime not null default current_timestamp comment '作成日時',
-    update_time  datetime not null default current_timestamp on update current_timestamp comment '更新日時'
+    update_time  datetime not null default current_timestamp on update current_timestamp comment '更新日時',
+    index idx_access_token_update_time (update_time)
 )
     default charset = utf8mb4
     comment 'アクセストークンテーブル';
 
+create table if not exists revoked_token
+(
+    id          bigint unsigned primary key auto_increment comment '失効の記録id。各ノードが差分を取得するために用いる',
+    token_id    char(36)        not null unique key comment '失効させたsigned方式のトークンid',
+    expire_time bigint unsigned not null comment 'トークンの有効期限(epoch秒)',
+    index idx_revoked_token_expire_time (expire_time)
+)
+    default charset = utf8mb4
+    comment 'signed方式の失効トークンテーブル';
+
 create table if not exists api_log
 (
     id               bigint unsigned primary key auto_increment comment 'ログid',
@@ -30,8 +52,111 @@ create table if not exists api_log
     http_status_code int             not null comment 'httpステータスコード',
     access_count     int unsigned    not null comment 'APIのアクセス回数',
     execution_time   double unsigned not null comment 'APIの実行にかかった時間の平均',
+    max_execution_time double unsigned not null default 0 comment 'APIの実行にかかった時間の最大値',
+    histogram        text comment 'APIの実行にかかった時間の分布',
+    time_to_first_byte double unsigned comment 'ハンドラがレスポンスの本文を書き始めるまでの時間の平均',
+    first_byte_histogram text comment 'ハンドラがレスポンスの本文を書き始めるまでの時間の分布',
     date             date            not null comment '集計日',
     file_name        varchar(100)    not null comment 'ログファイル名'
 )
     default charset = utf8mb4
     comment 'APIログテーブル';
+
+create table if not exists image_blob
+(
+    hash        char(64)        primary key comment '画像のSHA-256',
+    size        bigint unsigned not null comment '画像のバイト数',
+    ref_count   int unsigned    not null default 0 comment '画像を参照するプロダクト数',
+    create_time datetime        not null default current_timestamp comment '作成日時'
+)
+    default charset = utf8mb4
+    comment '画像実体テーブル';
+
+create table if not exists image_variant_job
+(
+    id          bigint unsigned primary key auto_increment comment 'ジョブid',
+    hash        char(64)     not null comment '元画像のSHA-256',
+    suffix      varchar(10)  not null comment '元画像の拡張子',
+    status      varchar(20)  not null comment 'ジョブの状態',
+    attempts    int unsigned not null default 0 comment '試行回数',
+    create_time datetime     not null default current_timestamp comment '作成日時',
+    update_time datetime     not null default current_timestamp on update current_timestamp comment '更新日時',
+    index idx_image_variant_job_status_id (status, id)
+)
+    default charset = utf8mb4
+    comment '縮小画像生成ジョブテーブル';
+
+-- 以下は既存のデータベースへのマイグレーション。create table if not existsは既存のテーブルを変更しないため、
+-- 後から追加した列とインデックスはinformation_schemaで存在を確認してから追加する。何度実行しても結果は変わらない
+
+set @ddl = (select if(count(*) = 0,
+    'alter table products add column version bigint unsigned not null default 0 comment ''楽観ロック用バージョン'' after image_path',
+    'do 0')
+    from information_schema.columns
+    where table_schema = database() and table_name = 'products' and column_name = 'version');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+    'alter table products add column title_normalized text character set utf8mb4 collate utf8mb4_bin comment ''titleインデックスと同じ規則で正規化したtitle。LIKE検索に用いる'' after title',
+    'do 0')
+    from information_schema.columns
+    where table_schema = database() and table_name = 'products' and column_name = 'title_normalized');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+    'alter table products add index idx_products_update_time_id (update_time, id)',
+    'do 0')
+    from information_schema.statistics
+    where table_schema = database() and table_name = 'products' and index_name = 'idx_products_update_time_id');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+    'alter table access_token add index idx_access_token_update_time (update_time)',
+    'do 0')
+    from information_schema.statistics
+    where table_schema = database() and table_name = 'access_token' and index_name = 'idx_access_token_update_time');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+    'alter table api_log add column max_execution_time double unsigned not null default 0 comment ''APIの実行にかかった時間の最大値'' after execution_time',
+    'do 0')
+    from information_schema.columns
+    where table_schema = database() and table_name = 'api_log' and column_name = 'max_execution_time');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+    'alter table api_log add column histogram text comment ''APIの実行にかかった時間の分布'' after max_execution_time',
+    'do 0')
+    from information_schema.columns
+    where table_schema = database() and table_name = 'api_log' and column_name = 'histogram');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+    'alter table api_log add column time_to_first_byte double unsigned comment ''ハンドラがレスポンスの本文を書き始めるまでの時間の平均'' after histogram',
+    'do 0')
+    from information_schema.columns
+    where table_schema = database() and table_name = 'api_log' and column_name = 'time_to_first_byte');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
+
+set @ddl = (select if(count(*) = 0,
+    'alter table api_log add column first_byte_histogram text comment ''ハンドラがレスポンスの本文を書き始めるまでの時間の分布'' after time_to_first_byte',
+    'do 0')
+    from information_schema.columns
+    where table_schema = database() and table_name = 'api_log' and column_name = 'first_byte_histogram');
+prepare stmt from @ddl;
+execute stmt;
+deallocate prepare stmt;
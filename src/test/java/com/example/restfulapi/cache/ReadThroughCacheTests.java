@@ -0,0 +1,66 @@
+package com.example.restfulapi.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadThroughCacheTests {
+
+  private static final long TTL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  @Test
+  void getLoadsOnceAndCountsHitsAndMisses() {
+    ReadThroughCache<Integer, String> cache = new ReadThroughCache<>(() -> TTL_NANOS, () -> 10);
+
+    assertThat(cache.get(1, key -> "first")).isEqualTo("first");
+    assertThat(cache.get(1, key -> "second")).isEqualTo("first");
+
+    assertThat(cache.getStats().getHits()).isEqualTo(1);
+    assertThat(cache.getStats().getMisses()).isEqualTo(1);
+    assertThat(cache.getStats().getSize()).isEqualTo(1);
+  }
+
+  @Test
+  void nullIsNotStoredAndExpiredEntryIsReloaded() {
+    ReadThroughCache<Integer, String> cache = new ReadThroughCache<>(() -> 0, () -> 10);
+
+    assertThat(cache.get(1, key -> null)).isNull();
+    assertThat(cache.getStats().getSize()).isZero();
+    cache.get(2, key -> "stale");
+
+    assertThat(cache.get(2, key -> "fresh")).isEqualTo("fresh");
+    assertThat(cache.getStats().getEvictions()).isEqualTo(1);
+  }
+
+  @Test
+  void valueLoadedWhileInvalidatedIsNotStored() {
+    ReadThroughCache<Integer, String> cache = new ReadThroughCache<>(() -> TTL_NANOS, () -> 10);
+
+    // 読み込み中に他のスレッドが同じキーを無効化した場合を再現する
+    cache.get(
+        1,
+        key -> {
+          cache.invalidate(key);
+          return "stale";
+        });
+
+    assertThat(cache.get(1, key -> "fresh")).isEqualTo("fresh");
+  }
+
+  @Test
+  void leastRecentlyUsedEntriesAreEvictedOverMaxSize() throws InterruptedException {
+    ReadThroughCache<Integer, String> cache = new ReadThroughCache<>(() -> TTL_NANOS, () -> 10);
+    for (int i = 0; i < 10; i++) {
+      cache.get(i, String::valueOf);
+    }
+    Thread.sleep(1);
+    cache.get(0, key -> "reloaded");
+
+    cache.get(10, String::valueOf);
+
+    assertThat(cache.getStats().getSize()).isEqualTo(9);
+    assertThat(cache.get(0, key -> "reloaded")).isEqualTo("0");
+  }
+}
@@ -0,0 +1,183 @@
+package com.example.restfulapi.filter;
+
+import com.example.restfulapi.config.RateLimitConfig;
+import com.example.restfulapi.constant.UrlPatterns;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.catalina.filters.RemoteIpFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.Filter;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTests {
+
+  private final RateLimitConfig rateLimitConfig = new RateLimitConfig();
+  private RateLimitFilter filter;
+
+  @BeforeEach
+  void setUp() {
+    rateLimitConfig.setAddress(new RateLimitConfig.Limit(1, 3));
+    rateLimitConfig.setDefaultLimit(new RateLimitConfig.Limit(1, 2));
+    rateLimitConfig.getApis().put(UrlPatterns.UPLOAD_IMAGE, new RateLimitConfig.Limit(1, 1));
+    StaticMessageSource messageSource = new StaticMessageSource();
+    messageSource.addMessage("error.products.ratelimit", Locale.JAPAN, "rate limit exceeded");
+    messageSource.addMessage("error.products.ratelimit.code", Locale.JAPAN, "429");
+    filter = new RateLimitFilter(rateLimitConfig, messageSource, new ObjectMapper());
+  }
+
+  @Test
+  void addressLimitAllowsBurstThenRejectsWithRetryAfter() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      assertThat(send(filter, request("10.0.0.1", null)).getStatus())
+          .isEqualTo(HttpStatus.OK.value());
+    }
+
+    MockHttpServletResponse rejected = send(filter, request("10.0.0.1", null));
+
+    assertThat(rejected.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+    assertThat(send(filter, request("10.0.0.2", null)).getStatus())
+        .isEqualTo(HttpStatus.OK.value());
+  }
+
+  @Test
+  void addressLimitCannotBeBypassedWithRandomTokens() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      send(filter, request("10.0.0.1", "Bearer token-" + i));
+    }
+
+    MockHttpServletResponse rejected = send(filter, request("10.0.0.1", "Bearer token-x"));
+
+    assertThat(rejected.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    assertThat(filter.getStats().getBuckets()).isEqualTo(1);
+  }
+
+  @Test
+  void authenticatedRequestsDoNotDrainAddressLimit() throws Exception {
+    Filter authenticate =
+        (request, response, chain) -> {
+          request.setAttribute(AuthenticationFilter.CLIENT_ATTRIBUTE, "session 1");
+          chain.doFilter(request, response);
+        };
+
+    for (int i = 0; i < 10; i++) {
+      MockHttpServletResponse response = new MockHttpServletResponse();
+      new MockFilterChain(new NoContentServlet(), filter, authenticate)
+          .doFilter(request("10.0.0.1", "Bearer token"), response);
+      assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+    for (int i = 0; i < 3; i++) {
+      assertThat(send(filter, request("10.0.0.1", null)).getStatus())
+          .isEqualTo(HttpStatus.OK.value());
+    }
+    assertThat(send(filter, request("10.0.0.1", null)).getStatus())
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+  }
+
+  @Test
+  void addressLimitUsesForwardedAddressOnlyFromTrustedProxy() throws Exception {
+    // server.forward-headers-strategy: nativeで有効になるRemoteIpValveと同じ既定値で動作する
+    RemoteIpFilter remoteIpFilter = new RemoteIpFilter();
+    remoteIpFilter.init(new MockFilterConfig());
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(sendThroughProxy(remoteIpFilter, "10.0.0.1", "203.0.113.1").getStatus())
+          .isEqualTo(HttpStatus.OK.value());
+    }
+    assertThat(sendThroughProxy(remoteIpFilter, "10.0.0.1", "203.0.113.1").getStatus())
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    assertThat(sendThroughProxy(remoteIpFilter, "10.0.0.1", "203.0.113.2").getStatus())
+        .isEqualTo(HttpStatus.OK.value());
+
+    // 信頼しないアドレスから届いたX-Forwarded-Forは無視する
+    for (int i = 0; i < 3; i++) {
+      sendThroughProxy(remoteIpFilter, "198.51.100.7", "203.0.113." + (10 + i));
+    }
+    assertThat(sendThroughProxy(remoteIpFilter, "198.51.100.7", "203.0.113.99").getStatus())
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+  }
+
+  @Test
+  void clientLimitAppliesPerAuthenticatedClientAndApi() throws Exception {
+    Filter clientFilter = filter.getClientFilter();
+
+    assertThat(send(clientFilter, authenticated("a", "GET", "/api/products")).getStatus())
+        .isEqualTo(HttpStatus.OK.value());
+    assertThat(send(clientFilter, authenticated("a", "GET", "/api/products")).getStatus())
+        .isEqualTo(HttpStatus.OK.value());
+    assertThat(send(clientFilter, authenticated("a", "GET", "/api/products")).getStatus())
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    assertThat(send(clientFilter, authenticated("b", "GET", "/api/products")).getStatus())
+        .isEqualTo(HttpStatus.OK.value());
+
+    assertThat(send(clientFilter, authenticated("a", "PUT", "/api/products/1/images")).getStatus())
+        .isEqualTo(HttpStatus.OK.value());
+    assertThat(send(clientFilter, authenticated("a", "PUT", "/api/products/1/images")).getStatus())
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    assertThat(filter.getStats().getRejectedByLimit())
+        .containsEntry("DEFAULT", 1L)
+        .containsEntry("UPLOAD_IMAGE", 1L);
+  }
+
+  @Test
+  void clientLimitIgnoresUnauthenticatedRequests() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      MockHttpServletRequest request = request("10.0.0.1", "Bearer token-" + i);
+      request.setRequestURI("/api/products");
+      assertThat(send(filter.getClientFilter(), request).getStatus())
+          .isEqualTo(HttpStatus.OK.value());
+    }
+  }
+
+  private static MockHttpServletRequest request(String address, String authorization) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+    request.setRemoteAddr(address);
+    if (authorization != null) {
+      request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+    }
+    return request;
+  }
+
+  private static MockHttpServletRequest authenticated(String client, String method, String uri) {
+    MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+    request.setAttribute(AuthenticationFilter.CLIENT_ATTRIBUTE, client);
+    return request;
+  }
+
+  private MockHttpServletResponse sendThroughProxy(
+      RemoteIpFilter remoteIpFilter, String proxyAddress, String forwardedFor) throws Exception {
+    MockHttpServletRequest request = request(proxyAddress, null);
+    request.addHeader("X-Forwarded-For", forwardedFor);
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    new MockFilterChain(new NoContentServlet(), remoteIpFilter, filter)
+        .doFilter(request, response);
+    return response;
+  }
+
+  private static MockHttpServletResponse send(Filter filter, MockHttpServletRequest request)
+      throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    filter.doFilter(request, response, new MockFilterChain());
+    return response;
+  }
+
+  /** 何も書き込まずに200を返すServlet */
+  private static class NoContentServlet extends HttpServlet {
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) {}
+  }
+}
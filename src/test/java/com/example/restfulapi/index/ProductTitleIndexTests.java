@@ -0,0 +1,126 @@
+package com.example.restfulapi.index;
+
+import com.example.restfulapi.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductTitleIndexTests {
+
+  private static final BigInteger ID_1 = BigInteger.valueOf(1);
+  private static final BigInteger ID_2 = BigInteger.valueOf(2);
+
+  private final ProductRepository productRepository = mock(ProductRepository.class);
+  private final ProductTitleIndex index = new ProductTitleIndex(productRepository);
+
+  @Test
+  void searchIgnoresWidthAndCase() {
+    index.put(ID_1, "ＲＥＳＴｆｕｌ入門");
+    index.put(ID_2, "Java入門");
+
+    assertThat(index.search("restful")).containsExactly(ID_1);
+    assertThat(index.search("ＪＡＶＡ")).containsExactly(ID_2);
+    assertThat(index.search("入門")).containsExactlyInAnyOrder(ID_1, ID_2);
+  }
+
+  @Test
+  void searchRequiresContiguousMatch() {
+    index.put(ID_1, "abcd");
+
+    assertThat(index.search("bc")).containsExactly(ID_1);
+    assertThat(index.search("abd")).isEmpty();
+    assertThat(index.search("xy")).isEmpty();
+  }
+
+  @Test
+  void singleCharacterKeywordScansAllTitles() {
+    index.put(ID_1, "本");
+    index.put(ID_2, "辞書");
+
+    assertThat(index.search("本")).containsExactly(ID_1);
+  }
+
+  @Test
+  void putReplacesPreviousTitleAndRemoveDeletes() {
+    index.put(ID_1, "old title");
+    index.put(ID_1, "new title");
+
+    assertThat(index.search("old")).isEmpty();
+    assertThat(index.search("new")).containsExactly(ID_1);
+
+    index.remove(ID_1);
+    assertThat(index.search("title")).isEmpty();
+    assertThat(index.size()).isZero();
+  }
+
+  @Test
+  void buildKeepsUpdatesReceivedWhileBuilding() {
+    when(productRepository.streamIdAndTitle())
+        .thenReturn(
+            Stream.of(new Object[] {ID_1, "stale title"}, new Object[] {ID_2, "deleted title"}));
+    index.put(ID_1, "fresh title");
+    index.remove(ID_2);
+
+    index.build();
+
+    assertThat(index.isReady()).isTrue();
+    assertThat(index.search("stale")).isEmpty();
+    assertThat(index.search("fresh")).containsExactly(ID_1);
+    assertThat(index.search("deleted")).isEmpty();
+  }
+
+  @Test
+  void searchAgreesWithLikeOnNormalizedColumn() {
+    Map<BigInteger, String> products = new LinkedHashMap<>();
+    products.put(BigInteger.valueOf(1), "ＲＥＳＴｆｕｌ入門");
+    products.put(BigInteger.valueOf(2), "Café");
+    products.put(BigInteger.valueOf(3), "Java ");
+    products.put(BigInteger.valueOf(4), "ｶﾀﾛｸﾞ");
+    products.put(BigInteger.valueOf(5), "100%_OFF");
+    products.forEach(index::put);
+
+    for (String keyword :
+        new String[] {"restful", "ＲＥＳＴ", "cafe", "café", "java ", "JAVA", "カタログ", "%_", "_"}) {
+      assertThat(index.search(keyword))
+          .as(keyword)
+          .isEqualTo(likeOnNormalizedColumn(products, keyword));
+    }
+    assertThat(index.search("cafe")).isEmpty();
+    assertThat(index.search("カタログ")).containsExactly(BigInteger.valueOf(4));
+  }
+
+  @Test
+  void fillNormalizedTitlesStoresNormalizedTitleOfUnfilledRows() {
+    when(productRepository.findIdAndTitleByTitleNormalizedIsNull(any(Pageable.class)))
+        .thenReturn(List.<Object[]>of(new Object[] {ID_1, "ＲＥＳＴ"}))
+        .thenReturn(Collections.emptyList());
+
+    index.fillNormalizedTitles();
+
+    verify(productRepository).updateTitleNormalized(ID_1, "rest");
+  }
+
+  // title_normalized列(utf8mb4_bin)に対する「LIKE %正規化した入力文字%」と同じ判定を行う
+  private static Set<BigInteger> likeOnNormalizedColumn(
+      Map<BigInteger, String> products, String keyword) {
+    String normalizedKeyword = ProductTitleIndex.normalize(keyword);
+    return products.entrySet().stream()
+        .filter(entry -> ProductTitleIndex.normalize(entry.getValue()).contains(normalizedKeyword))
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toSet());
+  }
+}
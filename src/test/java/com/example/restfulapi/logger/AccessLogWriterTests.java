@@ -0,0 +1,162 @@
+package com.example.restfulapi.logger;
+
+import com.example.restfulapi.config.AccessLogConfig;
+import com.example.restfulapi.constant.AccessLogPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AccessLogWriterTests {
+
+  @TempDir Path directory;
+
+  private final AccessLogConfig accessLogConfig = new AccessLogConfig();
+
+  @BeforeEach
+  void setUp() {
+    accessLogConfig.setDirectory(directory.toString());
+    accessLogConfig.setCapacity(4);
+    accessLogConfig.setIdleMillis(1);
+  }
+
+  @Test
+  void dropPolicyDiscardsRecordsWhileBufferIsFull() throws Exception {
+    accessLogConfig.setPolicy(AccessLogPolicy.DROP);
+    accessLogConfig.setIdleMillis(TimeUnit.SECONDS.toMillis(30));
+    AccessLogWriter writer = new AccessLogWriter(accessLogConfig);
+    writer.start();
+    Thread writerThread = findWriterThread();
+    await(() -> writerThread.getState() == Thread.State.TIMED_WAITING);
+
+    for (int i = 0; i < 5; i++) {
+      append(writer, "/api/products/" + i);
+    }
+
+    assertThat(writer.getStats().getDropped()).isEqualTo(1);
+    assertThat(writer.getStats().getQueued()).isEqualTo(4);
+    writer.stop();
+    assertThat(writer.getStats().getWritten()).isEqualTo(4);
+    assertThat(readLines(LocalDate.now())).hasSize(4);
+  }
+
+  @Test
+  void blockPolicyWaitsForSpaceWithoutLosingRecords() throws Exception {
+    accessLogConfig.setPolicy(AccessLogPolicy.BLOCK);
+    AccessLogWriter writer = new AccessLogWriter(accessLogConfig);
+    writer.start();
+
+    for (int i = 0; i < 100; i++) {
+      append(writer, "/api/products/" + i);
+    }
+    writer.stop();
+
+    assertThat(writer.getStats().getDropped()).isZero();
+    assertThat(writer.getStats().getWritten()).isEqualTo(100);
+    LocalDate today = LocalDate.now();
+    List<String> lines = readLines(today);
+    assertThat(lines).hasSize(100);
+    assertThat(lines.get(99).split("\t"))
+        .containsExactly("1500", "GET", "/api/products/99", "200", today.toString(), "300");
+  }
+
+  @Test
+  void rollOverDeletesEveryFileOlderThanMaxHistory() throws Exception {
+    LocalDate today = LocalDate.now();
+    accessLogConfig.setMaxHistory(30);
+    for (int days : new int[] {40, 31, 30, 29}) {
+      Files.createFile(accessLogConfig.getFile(today.minusDays(days)));
+    }
+    Files.createFile(directory.resolve("ApiLog.txt"));
+    AccessLogWriter writer = new AccessLogWriter(accessLogConfig);
+    writer.start();
+
+    append(writer, "/api/products");
+    writer.stop();
+
+    assertThat(Files.exists(accessLogConfig.getFile(today.minusDays(40)))).isFalse();
+    assertThat(Files.exists(accessLogConfig.getFile(today.minusDays(31)))).isFalse();
+    assertThat(Files.exists(accessLogConfig.getFile(today.minusDays(30)))).isFalse();
+    assertThat(Files.exists(accessLogConfig.getFile(today.minusDays(29)))).isTrue();
+    assertThat(Files.exists(directory.resolve("ApiLog.txt"))).isTrue();
+  }
+
+  @Test
+  void recordsAreCountedAsDroppedWhenFileCannotBeOpened() throws Exception {
+    Path notDirectory = Files.createFile(directory.resolve("file"));
+    accessLogConfig.setDirectory(notDirectory.toString());
+    AccessLogWriter writer = new AccessLogWriter(accessLogConfig);
+    writer.start();
+
+    append(writer, "/api/products");
+    append(writer, "/api/products");
+    writer.stop();
+
+    assertThat(writer.getStats().getWritten()).isZero();
+    assertThat(writer.getStats().getDropped()).isEqualTo(2);
+  }
+
+  @Test
+  void fileIsReopenedOnNextFlushAfterOpenFailure() throws Exception {
+    Path notDirectory = Files.createFile(directory.resolve("logs"));
+    accessLogConfig.setDirectory(notDirectory.toString());
+    AccessLogWriter writer = new AccessLogWriter(accessLogConfig);
+    writer.start();
+
+    append(writer, "/api/products/1");
+    await(() -> writer.getStats().getDropped() == 1);
+    // ディレクトリを作成できるようにすると、以降の記録は書き込まれる
+    Files.delete(notDirectory);
+    await(() -> Files.isDirectory(notDirectory));
+    append(writer, "/api/products/2");
+    writer.stop();
+
+    assertThat(writer.getStats().getWritten()).isEqualTo(1);
+    assertThat(readLines(LocalDate.now())).hasSize(1);
+  }
+
+  @Test
+  void writerContinuesAfterRecordFailsToEncode() throws Exception {
+    AccessLogWriter writer = new AccessLogWriter(accessLogConfig);
+    writer.start();
+
+    writer.append("GET", null, 200, 1500, 300, System.currentTimeMillis());
+    append(writer, "/api/products");
+    writer.stop();
+
+    assertThat(writer.getStats().getDropped()).isEqualTo(1);
+    assertThat(writer.getStats().getWritten()).isEqualTo(1);
+    assertThat(readLines(LocalDate.now())).hasSize(1);
+  }
+
+  private static void append(AccessLogWriter writer, String uri) {
+    writer.append("GET", uri, 200, 1500, 300, System.currentTimeMillis());
+  }
+
+  private List<String> readLines(LocalDate date) throws Exception {
+    return Files.readAllLines(accessLogConfig.getFile(date));
+  }
+
+  private static Thread findWriterThread() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().equals("access-log-writer") && thread.isAlive())
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(1);
+    }
+  }
+}
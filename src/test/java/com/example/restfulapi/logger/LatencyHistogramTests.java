@@ -0,0 +1,102 @@
+package com.example.restfulapi.logger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LatencyHistogramTests {
+
+  @Test
+  void percentilesStayWithinRelativeError() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 1; value <= 10000; value++) {
+      histogram.record(value);
+    }
+
+    assertThat(histogram.getTotalCount()).isEqualTo(10000);
+    assertThat(histogram.getMean()).isCloseTo(5000.5, within(0.001));
+    assertThat(histogram.getMax()).isEqualTo(10000);
+    assertThat(histogram.getValueAtPercentile(50)).isBetween(5000L, 5160L);
+    assertThat(histogram.getValueAtPercentile(95)).isBetween(9500L, 9800L);
+    assertThat(histogram.getValueAtPercentile(99)).isBetween(9900L, 10000L);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10000);
+  }
+
+  @Test
+  void smallValuesAreRecordedExactly() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(3);
+    histogram.record(31);
+
+    assertThat(histogram.getValueAtPercentile(1)).isZero();
+    assertThat(histogram.getValueAtPercentile(50)).isEqualTo(3);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(31);
+  }
+
+  @Test
+  void emptyHistogramReturnsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertThat(histogram.getValueAtPercentile(99)).isZero();
+    assertThat(histogram.getMean()).isZero();
+    assertThat(histogram.encode()).isEmpty();
+    assertThat(LatencyHistogram.decode("", 0).getTotalCount()).isZero();
+    assertThat(LatencyHistogram.decode(null, 0).getTotalCount()).isZero();
+  }
+
+  @Test
+  void decodeRestoresEncodedHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value : new long[] {0, 7, 7, 120, 3500, 3600, 250000}) {
+      histogram.record(value);
+    }
+
+    LatencyHistogram decoded =
+        LatencyHistogram.decode(histogram.encode(), histogram.getMean(), histogram.getMax());
+
+    assertThat(decoded.encode()).isEqualTo(histogram.encode());
+    assertThat(decoded.getTotalCount()).isEqualTo(histogram.getTotalCount());
+    assertThat(decoded.getMean()).isCloseTo(histogram.getMean(), within(0.001));
+    assertThat(decoded.getMax()).isEqualTo(250000);
+    for (double percentile : new double[] {10, 50, 90, 99, 100}) {
+      assertThat(decoded.getValueAtPercentile(percentile))
+          .isEqualTo(histogram.getValueAtPercentile(percentile));
+    }
+  }
+
+  @Test
+  void decodeWithoutMaxUsesUpperBoundOfHighestBucket() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1000);
+
+    LatencyHistogram decoded = LatencyHistogram.decode(histogram.encode(), 1000);
+
+    assertThat(decoded.getMax()).isBetween(1000L, 1031L);
+    assertThat(decoded.getValueAtPercentile(100)).isEqualTo(decoded.getMax());
+  }
+
+  @Test
+  void mergeEqualsRecordingAllValuesIntoOneHistogram() {
+    LatencyHistogram first = new LatencyHistogram();
+    LatencyHistogram second = new LatencyHistogram();
+    LatencyHistogram all = new LatencyHistogram();
+    for (long value = 0; value < 2000; value += 7) {
+      first.record(value);
+      all.record(value);
+    }
+    for (long value = 100000; value < 200000; value += 997) {
+      second.record(value);
+      all.record(value);
+    }
+
+    LatencyHistogram merged = first.merge(second);
+
+    assertThat(merged.encode()).isEqualTo(all.encode());
+    assertThat(merged.getTotalCount()).isEqualTo(all.getTotalCount());
+    assertThat(merged.getMean()).isCloseTo(all.getMean(), within(0.001));
+    assertThat(merged.getMax()).isEqualTo(all.getMax());
+    assertThat(merged.getValueAtPercentile(99)).isEqualTo(all.getValueAtPercentile(99));
+  }
+}
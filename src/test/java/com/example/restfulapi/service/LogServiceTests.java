@@ -0,0 +1,52 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.config.AccessLogConfig;
+import com.example.restfulapi.dto.LogContentsDto;
+import com.example.restfulapi.repository.LogContentsRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class LogServiceTests {
+
+  private final LogService logService =
+      new LogService(mock(LogContentsRepository.class), new AccessLogConfig());
+
+  @Test
+  void acquireAdiInfoReadsLegacyLineWithTrailingSpace() {
+    // logbackの「%msg %n」で出力していた頃の行。日付の後ろに空白が残る
+    LogContentsDto dto = parse("12\tGET\t/api/products\t200\t2019-12-13 ");
+
+    assertThat(dto.getApiName()).isEqualTo("商品取得API(複数件)");
+    assertThat(dto.getHttpMethod()).isEqualTo("GET");
+    assertThat(dto.getHttpStatusCode()).isEqualTo(200);
+    assertThat(dto.getExecutionTime()).isEqualTo(12.0);
+    assertThat(dto.getTimeToFirstByte()).isNull();
+    assertThat(dto.getDate()).isEqualTo(LocalDate.of(2019, 12, 13));
+  }
+
+  @Test
+  void acquireAdiInfoReadsMicrosecondLine() {
+    LogContentsDto dto = parse("1500\tGET\t/api/products\t200\t2019-12-13\t300");
+
+    assertThat(dto.getApiName()).isEqualTo("商品取得API(複数件)");
+    assertThat(dto.getExecutionTime()).isEqualTo(1.5);
+    assertThat(dto.getTimeToFirstByte()).isEqualTo(0.3);
+    assertThat(dto.getDate()).isEqualTo(LocalDate.of(2019, 12, 13));
+  }
+
+  @Test
+  void acquireAdiInfoMarksMalformedLineAsInvalid() {
+    assertThat(parse("GET\t/api/products\t200\t2019-12-13\t12").getApiName())
+        .isEqualTo("Invalid Request");
+    assertThat(parse("").getApiName()).isEqualTo("Invalid Request");
+  }
+
+  private LogContentsDto parse(String line) {
+    return logService.acquireAdiInfo(Arrays.asList(line.split("\t")));
+  }
+}
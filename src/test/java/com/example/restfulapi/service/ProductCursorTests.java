@@ -0,0 +1,54 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.entity.Product;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductCursorTests {
+
+  @Test
+  void decodeRestoresEncodedUpdateTimeAndId() {
+    Product product = new Product();
+    product.setUpdateTime(LocalDateTime.of(2019, 12, 13, 10, 15, 30));
+    product.setId(BigInteger.valueOf(12345));
+
+    Product decoded = ProductCursor.decode(ProductCursor.encode(product));
+
+    assertThat(decoded.getUpdateTime()).isEqualTo(product.getUpdateTime());
+    assertThat(decoded.getId()).isEqualTo(product.getId());
+  }
+
+  @Test
+  void encodedCursorIsUrlSafeWithoutPadding() {
+    Product product = new Product();
+    product.setUpdateTime(LocalDateTime.of(2019, 12, 13, 0, 0));
+    product.setId(BigInteger.ONE);
+
+    assertThat(ProductCursor.encode(product)).matches("[A-Za-z0-9_-]+");
+  }
+
+  @Test
+  void decodeRejectsMalformedCursors() {
+    assertThatThrownBy(() -> ProductCursor.decode("%%%"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ProductCursor.decode(encode("no-delimiter")))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ProductCursor.decode(encode("2019-13-45T00:00_1")))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ProductCursor.decode(encode("2019-12-13T00:00_abc")))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static String encode(String raw) {
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,134 @@
+package com.example.restfulapi.service;
+
+import com.example.restfulapi.config.TokenSessionConfig;
+import com.example.restfulapi.constant.TokenMode;
+import com.example.restfulapi.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SignedTokenServiceTests {
+
+  private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+  private final RevokedTokenRepository revokedTokenRepository = mock(RevokedTokenRepository.class);
+
+  @Test
+  void verifyReturnsSubjectOfIssuedToken() {
+    SignedTokenService service = createService(SECRET, 30);
+
+    assertThat(service.verify(service.issue("octocat"))).contains("octocat");
+  }
+
+  @Test
+  void verifyRejectsTamperedPayload() {
+    SignedTokenService service = createService(SECRET, 30);
+    String token = service.issue("octocat");
+    String[] parts = token.split("\\.");
+    String payload =
+        new String(Base64.getUrlDecoder().decode(parts[0]), StandardCharsets.UTF_8)
+            .replace("octocat", "admin");
+    String tampered =
+        Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+            + "."
+            + parts[1];
+
+    assertThat(service.verify(tampered)).isEmpty();
+  }
+
+  @Test
+  void verifyRejectsTamperedOrForeignSignature() {
+    SignedTokenService service = createService(SECRET, 30);
+    String token = service.issue("octocat");
+    // 末尾の文字は未使用のビットを含むため、署名の先頭の文字を書き換える
+    int signatureStart = token.indexOf('.') + 1;
+    char first = token.charAt(signatureStart);
+    String tampered =
+        token.substring(0, signatureStart)
+            + (first == 'A' ? 'B' : 'A')
+            + token.substring(signatureStart + 1);
+    SignedTokenService otherService = createService("fedcba9876543210fedcba9876543210", 30);
+
+    assertThat(service.verify(tampered)).isEmpty();
+    assertThat(service.verify(otherService.issue("octocat"))).isEmpty();
+    assertThat(service.verify(token.substring(0, token.indexOf('.')))).isEmpty();
+    assertThat(service.verify("not-a-token")).isEmpty();
+    assertThat(service.verify(null)).isEmpty();
+  }
+
+  @Test
+  void verifyRejectsExpiredToken() {
+    SignedTokenService service = createService(SECRET, 0);
+
+    assertThat(service.verify(service.issue("octocat"))).isEmpty();
+  }
+
+  @Test
+  void verifyRejectsRevokedToken() {
+    SignedTokenService service = createService(SECRET, 30);
+    String token = service.issue("octocat");
+    String otherToken = service.issue("octocat");
+
+    service.revoke(token);
+
+    assertThat(service.verify(token)).isEmpty();
+    assertThat(service.verify(otherToken)).contains("octocat");
+    verify(revokedTokenRepository).insert(eq(tokenId(token)), anyLong());
+  }
+
+  @Test
+  void syncRejectsTokenRevokedOnAnotherNode() {
+    SignedTokenService service = createService(SECRET, 30);
+    String token = service.issue("octocat");
+    long expiresAt = Instant.now().plusSeconds(1800).getEpochSecond();
+    when(revokedTokenRepository.findAfter(anyLong(), anyLong(), anyInt()))
+        .thenReturn(List.<Object[]>of(new Object[] {1L, tokenId(token), expiresAt}))
+        .thenReturn(Collections.emptyList());
+
+    assertThat(service.verify(token)).contains("octocat");
+    service.syncRevokedTokens();
+
+    assertThat(service.verify(token)).isEmpty();
+  }
+
+  @Test
+  void initRejectsShortSecret() {
+    TokenSessionConfig tokenSessionConfig = new TokenSessionConfig();
+    tokenSessionConfig.setMode(TokenMode.SIGNED);
+    tokenSessionConfig.setSecret("short");
+
+    assertThatThrownBy(
+            () -> new SignedTokenService(tokenSessionConfig, revokedTokenRepository).init())
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  private SignedTokenService createService(String secret, int boarderLine) {
+    TokenSessionConfig tokenSessionConfig = new TokenSessionConfig();
+    tokenSessionConfig.setMode(TokenMode.SIGNED);
+    tokenSessionConfig.setSecret(secret);
+    tokenSessionConfig.setBoarderLine(boarderLine);
+    SignedTokenService service = new SignedTokenService(tokenSessionConfig, revokedTokenRepository);
+    service.init();
+    return service;
+  }
+
+  private static String tokenId(String token) {
+    String payload = token.substring(0, token.indexOf('.'));
+    return new String(Base64.getUrlDecoder().decode(payload), StandardCharsets.UTF_8).split(":")[0];
+  }
+}
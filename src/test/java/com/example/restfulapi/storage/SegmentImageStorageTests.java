@@ -0,0 +1,219 @@
+package com.example.restfulapi.storage;
+
+import com.example.restfulapi.config.ImageStorageConfig;
+import com.example.restfulapi.config.PathConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentImageStorageTests {
+
+  private static final int HEADER_LENGTH = 73;
+  private static final int IMAGE_LENGTH = 200;
+  private static final int RECORD_LENGTH = HEADER_LENGTH + IMAGE_LENGTH;
+
+  @TempDir Path directory;
+
+  private final PathConfig pathConfig = new PathConfig();
+  private final ImageStorageConfig imageStorageConfig = new ImageStorageConfig();
+  private SegmentImageStorage storage;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    pathConfig.setImage(directory.toString());
+    imageStorageConfig.setType("segment");
+    imageStorageConfig.setSegmentMaxBytes(1024);
+    imageStorageConfig.setCompactionThreshold(0.6);
+    storage = open();
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    storage.close();
+  }
+
+  @Test
+  void reopenRestoresImagesAndTruncatesTornRecord() throws Exception {
+    store("a", 'A');
+    store("b", 'B');
+    storage.delete(hash("a"));
+    storage.close();
+    Path segment = segmentFile(0);
+    long size = Files.size(segment);
+    Files.write(segment, new byte[] {0x49, 0x4d, 0x47}, StandardOpenOption.APPEND);
+
+    storage = open();
+
+    assertThat(Files.size(segment)).isEqualTo(size);
+    assertThat(storage.exists(hash("a"))).isFalse();
+    assertThat(load("b")).containsOnly('B');
+    store("c", 'C');
+    storage.close();
+    storage = open();
+    assertThat(load("b")).containsOnly('B');
+    assertThat(load("c")).containsOnly('C');
+  }
+
+  @Test
+  void reopenSkipsPendingRecordWithoutLosingLaterRecords() throws Exception {
+    store("a", 'A');
+    storage.close();
+    Path segment = segmentFile(0);
+    // 転送中に停止したレコードの後ろに、並行して確定したレコードが続く状態を再現する
+    Files.write(segment, record((byte) 3, "p", 'P'), StandardOpenOption.APPEND);
+    Files.write(segment, record((byte) 1, "q", 'Q'), StandardOpenOption.APPEND);
+    long size = Files.size(segment);
+
+    storage = open();
+
+    assertThat(Files.size(segment)).isEqualTo(size);
+    assertThat(storage.exists(hash("p"))).isFalse();
+    assertThat(load("a")).containsOnly('A');
+    assertThat(load("q")).containsOnly('Q');
+  }
+
+  @Test
+  void concurrentStoresAreAllDurable() throws Exception {
+    String names = "abcdefghijklmnop";
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < names.length(); i++) {
+      String name = names.substring(i, i + 1);
+      futures.add(
+          executor.submit(
+              () -> {
+                store(name, Character.toUpperCase(name.charAt(0)));
+                return null;
+              }));
+    }
+    // 同じ画像を並行して保存しても、1件のみが有効となる
+    futures.add(
+        executor.submit(
+            () -> {
+              store("a", 'A');
+              return null;
+            }));
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+
+    storage.close();
+    storage = open();
+    for (int i = 0; i < names.length(); i++) {
+      String name = names.substring(i, i + 1);
+      assertThat(load(name)).containsOnly(Character.toUpperCase(name.charAt(0)));
+    }
+  }
+
+  @Test
+  void compactionCarriesTombstonesOnlyWhileOlderSegmentHoldsData() throws Exception {
+    store("x", 'X');
+    store("y", 'Y');
+    store("z", 'Z');
+    store("a", 'A');
+    store("b", 'B');
+    store("c", 'C');
+    storage.delete(hash("a"));
+    storage.delete(hash("x"));
+    store("d", 'D');
+
+    storage.compact();
+
+    assertThat(Files.exists(segmentFile(0))).isTrue();
+    assertThat(Files.exists(segmentFile(1))).isFalse();
+    // Aの墓標は同じセグメントのDATAレコードとともに消え、Xの墓標のみ引き継がれる
+    assertThat(Files.size(segmentFile(2))).isEqualTo(3L * RECORD_LENGTH + HEADER_LENGTH);
+    assertThat(load("b")).containsOnly('B');
+
+    storage.close();
+    storage = open();
+    assertThat(storage.exists(hash("a"))).isFalse();
+    assertThat(storage.exists(hash("x"))).isFalse();
+    for (String name : new String[] {"y", "z", "b", "c", "d"}) {
+      assertThat(load(name)).containsOnly(Character.toUpperCase(name.charAt(0)));
+    }
+  }
+
+  @Test
+  void fileSystemBlobIsReadableBeforeAndAfterImport() throws Exception {
+    Path blob = FileSystemImageStorage.resolve(pathConfig, hash("e"));
+    Files.createDirectories(blob.getParent());
+    Files.write(blob, image('E'));
+
+    assertThat(storage.exists(hash("e"))).isTrue();
+    assertThat(load("e")).containsOnly('E');
+
+    storage.importFileSystemBlobs();
+
+    assertThat(Files.exists(blob)).isFalse();
+    assertThat(load("e")).containsOnly('E');
+    storage.delete(hash("e"));
+    assertThat(storage.exists(hash("e"))).isFalse();
+  }
+
+  private SegmentImageStorage open() throws IOException {
+    SegmentImageStorage segmentImageStorage =
+        new SegmentImageStorage(pathConfig, imageStorageConfig);
+    segmentImageStorage.open();
+    return segmentImageStorage;
+  }
+
+  private void store(String name, char content) throws IOException {
+    Path file = Files.createTempFile(directory, name, ".tmp");
+    Files.write(file, image(content));
+    storage.store(hash(name), file);
+  }
+
+  private char[] load(String name) throws IOException {
+    try (InputStream inputStream = storage.load(hash(name), name).getInputStream()) {
+      byte[] bytes = inputStream.readAllBytes();
+      assertThat(bytes).hasSize(IMAGE_LENGTH);
+      char[] chars = new char[bytes.length];
+      for (int i = 0; i < bytes.length; i++) {
+        chars[i] = (char) bytes[i];
+      }
+      return chars;
+    }
+  }
+
+  private Path segmentFile(int segmentId) {
+    return directory.resolve("segments").resolve(segmentId + ".seg");
+  }
+
+  private static byte[] record(byte type, String name, char content) {
+    ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+    record.putInt(0x494d4731).put(type).put(hash(name).getBytes(StandardCharsets.US_ASCII));
+    record.putInt(IMAGE_LENGTH).put(image(content));
+    return record.array();
+  }
+
+  private static byte[] image(char content) {
+    byte[] image = new byte[IMAGE_LENGTH];
+    Arrays.fill(image, (byte) content);
+    return image;
+  }
+
+  private static String hash(String name) {
+    return name.repeat(64);
+  }
+}